@@ -1,4 +1,4 @@
-import model.AutoSaveThread;
+import model.AutoSaveScheduler;
 import model.Budget;
 import view.BudgetManagementUI;
 
@@ -9,35 +9,35 @@ import view.BudgetManagementUI;
  */
 public class BudgetManagementApp {
     /**
-     * The main method that creates and starts the UI and the auto-save thread for a budget object.
+     * The main method that creates and starts the UI and the autosave for a budget object.
      *
      * @param args the command-line arguments (not used)
      */
     public static void main(String[] args) {
         // Create a new budget object
         Budget budget = new Budget();
-        AutoSaveThread thread;
+        AutoSaveScheduler autoSave;
 
         // Try to retrieve a budget object from a temporary file
-        Budget retrievedBudget = new AutoSaveThread(budget).retrieveBudgetFromTempFile();
+        Budget retrievedBudget = AutoSaveScheduler.retrieveBudgetFromTempFile();
         if (retrievedBudget != null) {
             // Use the retrieved budget if it exists
             budget = retrievedBudget;
         }
 
-        // Create and start a new auto-save thread for the budget object
-        thread = new AutoSaveThread(budget);
+        // Create a new autosave for the budget object
+        autoSave = new AutoSaveScheduler(budget);
 
         // Create and launch a new UI for the budget object
         BudgetManagementUI ui = new BudgetManagementUI(budget);
 
-        // Set the auto-save thread for the UI
-        ui.setAutoSaveThread(thread);
+        // Set the autosave for the UI
+        ui.setAutoSaveScheduler(autoSave);
 
         ui.launch();
 
-        // Start the auto-save thread
-        thread.start();
+        // Start the autosave
+        autoSave.start();
     }
 
 }
\ No newline at end of file
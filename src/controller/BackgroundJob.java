@@ -0,0 +1,186 @@
+package controller;
+
+import model.Progress;
+
+import javax.swing.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A long operation, such as loading, saving or exporting a budget, run off the event dispatch thread so that
+ * the UI stays responsive.
+ * <p>
+ * Jobs run on a small pool of daemon threads with a bounded queue. A job is the {@link Progress} of its task: the
+ * task reports the rows and bytes it has processed, which the UI reads with {@link #getRows()},
+ * {@link #getTotalRows()} and {@link #getBytes()}, and checks whether {@link #cancel()} has been called, which it
+ * honours at its next check by throwing a {@link CancellationException}. Exactly one method of the
+ * {@link Listener} is then called on the event dispatch thread, according to how the task ended.
+ *
+ * @param <T> the type of the result of the task
+ * @author Alessandro Catenacci
+ */
+public final class BackgroundJob<T> implements Progress {
+    private static final int MAX_RUNNING_JOBS = 2;
+    private static final int MAX_QUEUED_JOBS = 16;
+
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(MAX_RUNNING_JOBS, MAX_RUNNING_JOBS,
+            30, TimeUnit.SECONDS, new ArrayBlockingQueue<>(MAX_QUEUED_JOBS), task -> {
+        Thread thread = new Thread(task, "budget-job");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    private final String title;
+    private final Task<T> task;
+    private final Listener<T> listener;
+    private volatile long totalRows = -1;
+    private final AtomicLong rows = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private volatile boolean cancelled;
+    /** Set on the event dispatch thread, just before the listener is called. */
+    private volatile boolean done;
+
+    private BackgroundJob(String title, Task<T> task, Listener<T> listener) {
+        this.title = title;
+        this.task = task;
+        this.listener = listener;
+    }
+
+    /**
+     * Starts a job.
+     *
+     * @param title    the title of the job, as shown to the user
+     * @param task     the task to run
+     * @param listener the listener told, on the event dispatch thread, how the job ended
+     * @param <T>      the type of the result of the task
+     * @return the job
+     */
+    public static <T> BackgroundJob<T> submit(String title, Task<T> task, Listener<T> listener) {
+        BackgroundJob<T> job = new BackgroundJob<>(title, task, listener);
+        try {
+            EXECUTOR.execute(job::run);
+        } catch (RejectedExecutionException e) {
+            job.finish(() -> listener.failed(new RejectedExecutionException(
+                    "Too many operations in progress, please retry later", e)));
+        }
+        return job;
+    }
+
+    private void run() {
+        T result;
+        try {
+            checkCancelled();
+            result = task.run(this);
+        } catch (CancellationException e) {
+            finish(listener::cancelled);
+            return;
+        } catch (Exception e) {
+            finish(() -> listener.failed(e));
+            return;
+        } catch (Error e) {
+            // Typically out of memory: still tell the listener, so the job does not look stuck
+            finish(() -> listener.failed(new ExecutionException(e.toString(), e)));
+            throw e;
+        }
+        finish(() -> listener.succeeded(result));
+    }
+
+    private void finish(Runnable callback) {
+        SwingUtilities.invokeLater(() -> {
+            done = true;
+            callback.run();
+        });
+    }
+
+    /**
+     * Asks the task to stop. It stops at its next check, and the listener is then told that the job was
+     * cancelled. A task that completes without checking again, such as one cancelled too late, succeeds or
+     * fails as usual: only the {@link CancellationException} thrown by a check makes a job cancelled.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public void start(long totalRows) {
+        this.totalRows = totalRows;
+    }
+
+    @Override
+    public void advance(long rows, long bytes) {
+        this.rows.addAndGet(rows);
+        this.bytes.addAndGet(bytes);
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * Returns the number of rows the task will process, or -1 if it has not said yet.
+     */
+    public long getTotalRows() {
+        return totalRows;
+    }
+
+    public long getRows() {
+        return rows.get();
+    }
+
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    /**
+     * Tells whether the job has ended and its listener has been called. Only meaningful on the event dispatch
+     * thread.
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * The operation run by a job.
+     *
+     * @param <T> the type of its result
+     */
+    @FunctionalInterface
+    public interface Task<T> {
+        /**
+         * Runs the operation.
+         *
+         * @param progress the progress to report to and to check for cancellation
+         * @return the result
+         * @throws Exception if the operation fails
+         */
+        T run(Progress progress) throws Exception;
+    }
+
+    /**
+     * Told on the event dispatch thread how a job ended.
+     *
+     * @param <T> the type of the result of the job
+     */
+    public interface Listener<T> {
+        void succeeded(T result);
+
+        void failed(Exception e);
+
+        default void cancelled() {
+        }
+    }
+}
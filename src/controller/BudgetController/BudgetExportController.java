@@ -1,14 +1,18 @@
 package controller.BudgetController;
 
+import controller.BackgroundJob;
 import controller.ExportingFeature.CsvExporter;
 import controller.ExportingFeature.ExcelExporter;
 import controller.ExportingFeature.Exportable;
 import controller.ExportingFeature.TextExporter;
 import model.Budget;
+import view.BudgetManagementUI;
 import view.panels.BudgetPanel.BudgetExportPanel;
 
 import javax.swing.*;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 
 /**
  * A controller class for handling budget export operations.
@@ -72,20 +76,40 @@ public class BudgetExportController {
     }
 
     /**
-     * Saves the budget data to the specified file.
+     * Saves the budget data to the specified file, in a background job shown in the UI.
+     * A cancelled export leaves the file as it was.
      *
      * @param file       the file to save the budget data
      * @param exporter   the {@link Exportable} object responsible for exporting the budget data
      */
     private void saveToFile(File file, Exportable exporter) {
-        try {
-            exporter.export(file.getAbsolutePath(), budget);
-            JOptionPane.showMessageDialog(panel, "Budget saved to " + file.getAbsolutePath());
-        } catch (Exception e) {
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(panel, "An error occurred while saving the budget: "
-                            + e.getMessage(),
-                    "Error", JOptionPane.ERROR_MESSAGE);
-        }
+        BackgroundJob<Void> job = BackgroundJob.submit("Exporting " + file.getName(), progress -> {
+            exporter.export(file.getAbsolutePath(), budget, progress);
+            return null;
+        }, new BackgroundJob.Listener<>() {
+            @Override
+            public void succeeded(Void result) {
+                JOptionPane.showMessageDialog(panel, "Budget saved to " + file.getAbsolutePath());
+            }
+
+            @Override
+            public void failed(Exception e) {
+                e.printStackTrace();
+                JOptionPane.showMessageDialog(panel, "An error occurred while saving the budget: "
+                                + e.getMessage(),
+                        "Error", JOptionPane.ERROR_MESSAGE);
+            }
+
+            @Override
+            public void cancelled() {
+                // The file itself is only replaced once the export is complete
+                try {
+                    Files.deleteIfExists(Exportable.temporaryFile(file.toPath()));
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+        BudgetManagementUI.getInstance().showJob(job);
     }
 }
\ No newline at end of file
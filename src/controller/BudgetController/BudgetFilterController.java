@@ -1,20 +1,22 @@
 package controller.BudgetController;
 
 import model.Budget;
+import model.Money;
 import model.Transaction;
-import view.components.BudgetTableModel;
 import view.panels.BudgetPanel.BudgetFilterPanel;
 import view.panels.BudgetPanel.BudgetStatusPanel;
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import java.awt.event.ActionEvent;
 import java.awt.event.ItemEvent;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.text.NumberFormat;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -25,27 +27,27 @@ import java.util.List;
  */
 public class BudgetFilterController {
 
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+
     private final BudgetFilterPanel filterPanel;
-    private final BudgetTableModel tableModel;
     private final BudgetStatusPanel statusPanel;
     private Budget budget;
-    private final List<Transaction> originalTransactions;
+    private final Budget originalBudget;
 
     /**
      * Constructs a new BudgetFilterController with the given parameters.
      *
      * @param filterPanel   The {@link BudgetFilterPanel} to be controlled by this controller.
-     * @param tableModel    The {@link BudgetTableModel} to be updated based on the applied filters.
      * @param statusPanel   The {@link BudgetStatusPanel} to be updated based on the filtered transactions.
      * @param budget        The {@link Budget} instance containing the transactions to be filtered.
      */
-    public BudgetFilterController(BudgetFilterPanel filterPanel, BudgetTableModel tableModel,
-                                  BudgetStatusPanel statusPanel, Budget budget) {
+    public BudgetFilterController(BudgetFilterPanel filterPanel, BudgetStatusPanel statusPanel, Budget budget) {
         this.filterPanel = filterPanel;
-        this.tableModel = tableModel;
         this.statusPanel = statusPanel;
         this.budget = budget;
-        this.originalTransactions = new ArrayList<>(budget.getTransactions());
+        // Keep an indexed copy of the unfiltered transactions, so that every filter is a range query on it
+        this.originalBudget = new Budget();
+        this.originalBudget.setTransactions(budget.getTransactions());
 
         setEditable(false);
 
@@ -54,9 +56,31 @@ public class BudgetFilterController {
             if (e.getStateChange() == ItemEvent.SELECTED) {
                 String selectedPreset = (String) e.getItem();
                 setEditable("Custom".equals(selectedPreset));
+                showPeriodTotal();
             }
         });
 
+        // Show the total of the selected period as the custom dates are typed
+        DocumentListener dateListener = new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                showPeriodTotal();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                showPeriodTotal();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                showPeriodTotal();
+            }
+        };
+        filterPanel.getFromDateField().getDocument().addDocumentListener(dateListener);
+        filterPanel.getToDateField().getDocument().addDocumentListener(dateListener);
+        showPeriodTotal();
+
         // Add action listener to filter button
         filterPanel.getFilterButton().addActionListener((ActionEvent e) -> {
             String selectedPreset = (String) filterPanel.getPresetComboBox().getSelectedItem();
@@ -65,14 +89,12 @@ public class BudgetFilterController {
             } else if (selectedPreset != null){
                 filterByPreset(selectedPreset);
             }
-            tableModel.fireTableDataChanged();
             statusPanel.updateBudget();
         });
 
         // Add action listener to reset button
         filterPanel.getResetButton().addActionListener((ActionEvent e) -> {
-            budget.setTransactions(new ArrayList<>(originalTransactions));
-            tableModel.fireTableDataChanged();
+            budget.setTransactions(originalBudget.getTransactions());
             statusPanel.updateBudget();
         });
 
@@ -83,15 +105,12 @@ public class BudgetFilterController {
      * Filters the transactions in the budget by the given date range.
      */
     private void filterByCustomDateRange() {
-        String fromDateStr = filterPanel.getFromDate();
-        String toDateStr = filterPanel.getToDate();
         LocalDateTime fromDate;
         LocalDateTime toDate;
 
         try {
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
-            fromDate = LocalDate.parse(fromDateStr, formatter).atStartOfDay();
-            toDate = LocalDate.parse(toDateStr, formatter).atTime(LocalTime.MAX);
+            fromDate = parseFromDate();
+            toDate = parseToDate();
 
             if (fromDate.isAfter(toDate)) {
                 JOptionPane.showMessageDialog(filterPanel, "Invalid date range. " +
@@ -105,8 +124,7 @@ public class BudgetFilterController {
             return;
         }
 
-        List<Transaction> filteredTransactions = budget.filterTransactions(originalTransactions,
-                null, fromDate, toDate);
+        List<Transaction> filteredTransactions = originalBudget.filterTransactions(null, fromDate, toDate);
         budget.setTransactions(filteredTransactions);
     }
 
@@ -117,23 +135,73 @@ public class BudgetFilterController {
      */
     private void filterByPreset(String preset) {
         LocalDateTime toDate = LocalDateTime.now();
-        LocalDateTime fromDate;
+        LocalDateTime fromDate = presetFromDate(preset, toDate);
+        if (fromDate == null) {
+            JOptionPane.showMessageDialog(filterPanel, "Invalid preset",
+                    "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
 
-        switch (preset) {
-            case "Last Day" -> fromDate = toDate.minusDays(1);
-            case "Last Week" -> fromDate = toDate.minusWeeks(1);
-            case "Last Month" -> fromDate = toDate.minusMonths(1);
-            case "Last Year" -> fromDate = toDate.minusYears(1);
-            default -> {
-                JOptionPane.showMessageDialog(filterPanel, "Invalid preset",
-                        "Error", JOptionPane.ERROR_MESSAGE);
-                return;
+        List<Transaction> filteredTransactions = originalBudget.filterTransactions(null, fromDate, toDate);
+        budget.setTransactions(filteredTransactions);
+    }
+
+    /**
+     * Returns the start of the period of a preset.
+     *
+     * @param preset The preset.
+     * @param toDate The end of the period.
+     * @return The start of the period, or null if the preset is unknown.
+     */
+    private static LocalDateTime presetFromDate(String preset, LocalDateTime toDate) {
+        return switch (preset) {
+            case "Last Day" -> toDate.minusDays(1);
+            case "Last Week" -> toDate.minusWeeks(1);
+            case "Last Month" -> toDate.minusMonths(1);
+            case "Last Year" -> toDate.minusYears(1);
+            default -> null;
+        };
+    }
+
+    private LocalDateTime parseFromDate() {
+        return LocalDate.parse(filterPanel.getFromDate(), DATE_FORMATTER).atStartOfDay();
+    }
+
+    private LocalDateTime parseToDate() {
+        return LocalDate.parse(filterPanel.getToDate(), DATE_FORMATTER).atTime(LocalTime.MAX);
+    }
+
+    /**
+     * Shows the number and the total of the transactions of the selected period, before filtering.
+     * They come from {@link Budget#countBetween} and {@link Budget#sumBetween}, so no transaction is read.
+     * Nothing is shown while the custom dates are incomplete or invalid.
+     */
+    private void showPeriodTotal() {
+        String preset = (String) filterPanel.getPresetComboBox().getSelectedItem();
+        LocalDateTime fromDate;
+        LocalDateTime toDate;
+        if ("Custom".equals(preset)) {
+            try {
+                fromDate = parseFromDate();
+                toDate = parseToDate();
+            } catch (DateTimeParseException ex) {
+                fromDate = null;
+                toDate = null;
             }
+        } else {
+            toDate = LocalDateTime.now();
+            fromDate = preset == null ? null : presetFromDate(preset, toDate);
         }
 
-        List<Transaction> filteredTransactions = budget.filterTransactions(originalTransactions,
-                null, fromDate, toDate);
-        budget.setTransactions(filteredTransactions);
+        JLabel label = filterPanel.getPeriodTotalLabel();
+        if (fromDate == null || toDate.isBefore(fromDate)) {
+            label.setText(" ");
+            return;
+        }
+        int count = originalBudget.countBetween(fromDate, toDate);
+        Money total = originalBudget.sumBetween(fromDate, toDate);
+        label.setText("Transactions in period: " + count + ", total amount: "
+                + NumberFormat.getNumberInstance().format(total.toBigDecimal()));
     }
 
     /**
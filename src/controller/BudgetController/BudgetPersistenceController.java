@@ -1,8 +1,12 @@
 package controller.BudgetController;
 
+import controller.BackgroundJob;
 import controller.CustomPrintable;
-import model.AutoSaveThread;
+import model.AutoSaveScheduler;
 import model.Budget;
+import model.BudgetFile;
+import model.BudgetSummary;
+import model.LazyBudgetFile;
 import view.BudgetManagementUI;
 import view.panels.BudgetPanel.BudgetPersistencePanel;
 
@@ -41,21 +45,7 @@ public class BudgetPersistenceController {
         panel.getFileButton().addActionListener(e -> panel.getFileMenu().show(panel.getFileButton(),
                 0, panel.getFileButton().getHeight()));
 
-        panel.addOpenActionListener(e -> {
-            Budget loadedBudget = open();
-            if(loadedBudget != null){
-
-                // Get the current UI, dispose it and stop its auto-save thread
-                BudgetManagementUI currentUi = BudgetManagementUI.getInstance();
-                currentUi.dispose();
-
-                AutoSaveThread thread;
-                thread = new AutoSaveThread(loadedBudget);
-                BudgetManagementUI newUi = new BudgetManagementUI(loadedBudget);
-                newUi.launch();
-                thread.start();
-            }
-        });
+        panel.addOpenActionListener(e -> open());
 
         panel.addSaveAsActionListener(e -> saveAs());
 
@@ -64,13 +54,12 @@ public class BudgetPersistenceController {
 
 
     /**
-     * Opens a serialized budget file and returns the budget object.
-     *
-     * @return The budget object loaded from the file, or null if the operation was cancelled or failed.
+     * Opens a budget file selected by the user in a background job, without decoding its transactions yet,
+     * then replaces the current UI with one showing them.
      */
-    public Budget open() {
+    public void open() {
         JFileChooser fileChooser = new JFileChooser();
-        fileChooser.setFileFilter(new FileNameExtensionFilter("Serialized Budget files", "bma"));
+        fileChooser.setFileFilter(new FileNameExtensionFilter("Budget files", "bma"));
 
         int result = fileChooser.showOpenDialog(panel);
         if (result == JFileChooser.APPROVE_OPTION) {
@@ -79,19 +68,91 @@ public class BudgetPersistenceController {
                 JOptionPane.showMessageDialog(panel,
                         "Invalid file type selected. Please select a .bma file.",
                         "Error", JOptionPane.ERROR_MESSAGE);
-                return null;
+                return;
             }
-            try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
-                Budget loadedBudget = (Budget) ois.readObject();
-                JOptionPane.showMessageDialog(panel, "Budget loaded from " + file.getAbsolutePath());
-                return loadedBudget;
-            } catch (IOException | ClassNotFoundException ex) {
+            BackgroundJob<LazyBudgetFile> job = BackgroundJob.submit("Opening " + file.getName(),
+                    progress -> LazyBudgetFile.open(file.toPath()), new BackgroundJob.Listener<>() {
+                        @Override
+                        public void succeeded(LazyBudgetFile opened) {
+                            show(opened);
+                        }
+
+                        @Override
+                        public void failed(Exception ex) {
+                            ex.printStackTrace();
+                            JOptionPane.showMessageDialog(panel, "Error loading file: " + ex.getMessage(),
+                                    "Error", JOptionPane.ERROR_MESSAGE);
+                        }
+                    });
+            BudgetManagementUI.getInstance().showJob(job);
+        }
+    }
+
+    /**
+     * Replaces the current UI with one showing the rows of an opened file right away, and loads them into its
+     * budget in a background job. The current UI is only hidden until the load succeeds, so that its budget
+     * and its autosave are kept if the load fails or is cancelled.
+     */
+    private static void show(LazyBudgetFile file) {
+        BudgetManagementUI currentUi = BudgetManagementUI.getInstance();
+        currentUi.hide();
+
+        Budget loadedBudget = new Budget();
+        AutoSaveScheduler autoSave = new AutoSaveScheduler(loadedBudget);
+        BudgetManagementUI newUi = new BudgetManagementUI(loadedBudget);
+        newUi.setAutoSaveScheduler(autoSave);
+        newUi.showLoading(file.transactions());
+        newUi.launch();
+        newUi.showJob(load(file, loadedBudget, currentUi, newUi, autoSave));
+    }
+
+    /**
+     * Loads all the transactions of an opened file into the budget of a new UI in a background job. If the load
+     * succeeds, the previous UI is disposed, which stops its autosave, and the autosave of the new one is started.
+     * Otherwise the new UI is disposed and the previous one is shown again, its autosave still running.
+     */
+    private static BackgroundJob<Void> load(LazyBudgetFile file, Budget budget, BudgetManagementUI previousUi,
+                                            BudgetManagementUI ui, AutoSaveScheduler autoSave) {
+        return BackgroundJob.submit("Loading " + file.size() + " transactions", progress -> {
+            file.loadInto(budget, progress);
+            return null;
+        }, new BackgroundJob.Listener<>() {
+            @Override
+            public void succeeded(Void result) {
+                close();
+                ui.loadingFinished();
+                // The previous autosave commits its last changes before the new one saves its first checkpoint
+                previousUi.dispose();
+                autoSave.start();
+            }
+
+            @Override
+            public void failed(Exception ex) {
                 ex.printStackTrace();
-                JOptionPane.showMessageDialog(panel, "Error loading file: " + ex.getMessage(),
+                restorePrevious();
+                JOptionPane.showMessageDialog(null, "Error loading file: " + ex.getMessage(),
                         "Error", JOptionPane.ERROR_MESSAGE);
             }
-        }
-        return null;
+
+            @Override
+            public void cancelled() {
+                restorePrevious();
+            }
+
+            private void restorePrevious() {
+                close();
+                ui.dispose();
+                previousUi.launch();
+            }
+
+            private void close() {
+                try {
+                    file.close();
+                } catch (IOException ex) {
+                    ex.printStackTrace();
+                }
+            }
+        });
     }
 
     /**
@@ -99,7 +160,7 @@ public class BudgetPersistenceController {
      */
     public void saveAs() {
         JFileChooser fileChooser = new JFileChooser();
-        fileChooser.setFileFilter(new FileNameExtensionFilter("Serialized Budget files", "bma"));
+        fileChooser.setFileFilter(new FileNameExtensionFilter("Budget files", "bma"));
 
         int result = fileChooser.showSaveDialog(panel);
         if (result == JFileChooser.APPROVE_OPTION) {
@@ -115,14 +176,26 @@ public class BudgetPersistenceController {
                     return;
                 }
             }
-            try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(file))) {
-                oos.writeObject(budget);
-                JOptionPane.showMessageDialog(panel, "Budget saved to " + file.getAbsolutePath());
-            } catch (IOException ex) {
-                ex.printStackTrace();
-                JOptionPane.showMessageDialog(panel, "Error saving file: " + ex.getMessage(),
-                        "Error", JOptionPane.ERROR_MESSAGE);
-            }
+            // A save is only cancelled if it stopped before replacing the file, which is then untouched, so there
+            // is nothing to tell; a save cancelled too late completes and is reported as saved
+            File target = file;
+            BackgroundJob<Void> job = BackgroundJob.submit("Saving " + target.getName(), progress -> {
+                BudgetFile.save(budget, target.toPath(), BudgetFile.Compression.DEFLATE, progress);
+                return null;
+            }, new BackgroundJob.Listener<>() {
+                @Override
+                public void succeeded(Void result) {
+                    JOptionPane.showMessageDialog(panel, "Budget saved to " + target.getAbsolutePath());
+                }
+
+                @Override
+                public void failed(Exception ex) {
+                    ex.printStackTrace();
+                    JOptionPane.showMessageDialog(panel, "Error saving file: " + ex.getMessage(),
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            });
+            BudgetManagementUI.getInstance().showJob(job);
         }
     }
 
@@ -140,10 +213,11 @@ public class BudgetPersistenceController {
             Printable tablePrintable = budgetTable.getPrintable(JTable.PrintMode.FIT_WIDTH,
                     null, null);
 
-            String label1 = "Number of Transactions: " + budget.getTransactions().size();
+            BudgetSummary summary = budget.getSummary();
+            String label1 = "Number of Transactions: " + summary.count();
 
             DecimalFormat decimalFormat = (DecimalFormat) NumberFormat.getNumberInstance();
-            String formattedTotalAmount = decimalFormat.format(budget.getTotalAmount());
+            String formattedTotalAmount = decimalFormat.format(summary.total().toBigDecimal());
             String label2 = "Total Amount Spent: " + formattedTotalAmount;
 
             Font labelFont = new Font("Arial", Font.PLAIN, 12);
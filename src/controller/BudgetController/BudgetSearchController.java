@@ -1,6 +1,7 @@
 package controller.BudgetController;
 
 import model.Budget;
+import model.Query;
 import model.Transaction;
 import view.components.BudgetTable;
 import view.panels.BudgetPanel.BudgetSearchPanel;
@@ -65,8 +66,7 @@ public class BudgetSearchController {
                 }
 
                 Optional<List<Transaction>> optionalFilteredTransactions =
-                        Optional.ofNullable(budget.filterTransactions(budget.getTransactions(),
-                                searchText, null, null));
+                        Optional.ofNullable(budget.query(Query.descriptionContains(searchText)));
 
                 if (optionalFilteredTransactions.isPresent()) {
                     filteredTransactions = optionalFilteredTransactions.get();
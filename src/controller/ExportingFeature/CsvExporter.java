@@ -1,11 +1,18 @@
 package controller.ExportingFeature;
 
 import model.Budget;
+import model.Progress;
 import model.Transaction;
+import org.apache.commons.io.output.CountingOutputStream;
 
 import java.io.BufferedWriter;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
 import java.time.format.DateTimeFormatter;
 
 /**
@@ -24,22 +31,53 @@ public class CsvExporter implements Exportable {
      */
     @Override
     public void export(String fileName, Budget budget) {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(fileName))) {
+        try {
+            export(fileName, budget, Progress.NONE);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Exports the given budget to a CSV file with the given file name, reporting each row written.
+     *
+     * @param fileName the name of the CSV file to export to
+     * @param budget   the budget to export
+     * @param progress the progress to report to
+     * @throws IOException if the file cannot be written
+     */
+    @Override
+    public void export(String fileName, Budget budget, Progress progress) throws IOException {
+        List<Transaction> transactions = budget.getTransactions();
+        progress.start(transactions.size());
+        Path file = Path.of(fileName);
+        Path temporaryFile = Exportable.temporaryFile(file);
+        CountingOutputStream output = new CountingOutputStream(new FileOutputStream(temporaryFile.toFile()));
+        long reported = 0;
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(output, Charset.defaultCharset()))) {
             // write header row
             writer.write("ID,Date,Description,Amount");
             writer.newLine();
 
             // write each transaction to a separate line in the file
-            for (Transaction transaction : budget.getTransactions()) {
+            for (Transaction transaction : transactions) {
+                progress.checkCancelled();
                 writer.write(String.format("%d,%s,%s,%s",
                         transaction.getId(),
                         transaction.getTransactionDate().format(DATE_FORMAT),
                         transaction.getDescription(),
                         transaction.getAmount()));
                 writer.newLine();
+                long written = output.getByteCount();
+                progress.advance(1, written - reported);
+                reported = written;
             }
-        } catch (IOException e) {
-            e.printStackTrace();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporaryFile);
+            throw e;
         }
+        // the last rows only reach the file when the writer is closed
+        progress.advance(0, output.getByteCount() - reported);
+        Exportable.replaceWithTemporaryFile(file);
     }
 }
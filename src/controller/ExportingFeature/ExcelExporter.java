@@ -1,12 +1,16 @@
 package controller.ExportingFeature;
 
 import model.Budget;
+import model.Progress;
 import model.Transaction;
+import org.apache.commons.io.output.CountingOutputStream;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
 
@@ -27,6 +31,26 @@ public class ExcelExporter implements Exportable {
      */
     @Override
     public void export(String fileName, Budget budget) {
+        try {
+            export(fileName, budget, Progress.NONE);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Exports the given budget data to an Excel file with the specified filename, reporting each row created.
+     * The bytes are reported once the workbook has been written, as the whole workbook is written at the end.
+     *
+     * @param fileName the name of the Excel file to be created
+     * @param budget the budget data to be exported to Excel
+     * @param progress the progress to report to
+     * @throws IOException if the file cannot be written
+     */
+    @Override
+    public void export(String fileName, Budget budget, Progress progress) throws IOException {
+        List<Transaction> transactions = budget.getTransactions();
+        progress.start(transactions.size());
         try (Workbook workbook = new XSSFWorkbook()) {
             Sheet sheet = workbook.createSheet("Budget");
 
@@ -46,19 +70,20 @@ public class ExcelExporter implements Exportable {
                 headerRow.getCell(i).setCellStyle(headerCellStyle);
             }
 
-            // create data rows
-            List<Transaction> transactions = budget.getTransactions();
+            // create data rows, sharing a single style for the amounts
+            CellStyle amountCellStyle = workbook.createCellStyle();
+            amountCellStyle.setDataFormat(workbook.createDataFormat().getFormat("#,##0.00"));
             for (int i = 0; i < transactions.size(); i++) {
+                progress.checkCancelled();
                 Transaction transaction = transactions.get(i);
                 Row row = sheet.createRow(i + 1);
                 row.createCell(0).setCellValue(transaction.getId());
                 row.createCell(1).setCellValue(transaction.getTransactionDate().format(DATE_FORMAT));
                 row.createCell(2).setCellValue(transaction.getDescription());
                 Cell amountCell = row.createCell(3);
-                amountCell.setCellValue(transaction.getAmount());
-                CellStyle amountCellStyle = workbook.createCellStyle();
-                amountCellStyle.setDataFormat(workbook.createDataFormat().getFormat("#,##0.00"));
+                amountCell.setCellValue(transaction.getAmount().toBigDecimal().doubleValue());
                 amountCell.setCellStyle(amountCellStyle);
+                progress.advance(1, 0);
             }
 
             // adjust column widths
@@ -67,11 +92,18 @@ public class ExcelExporter implements Exportable {
             }
 
             // save workbook to file
-            try (FileOutputStream outputStream = new FileOutputStream(fileName)) {
+            progress.checkCancelled();
+            Path file = Path.of(fileName);
+            Path temporaryFile = Exportable.temporaryFile(file);
+            try (CountingOutputStream outputStream = new CountingOutputStream(
+                    new FileOutputStream(temporaryFile.toFile()))) {
                 workbook.write(outputStream);
+                progress.advance(0, outputStream.getByteCount());
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(temporaryFile);
+                throw e;
             }
-        } catch (IOException e) {
-            e.printStackTrace();
+            Exportable.replaceWithTemporaryFile(file);
         }
     }
 }
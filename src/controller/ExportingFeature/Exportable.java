@@ -1,10 +1,20 @@
 package controller.ExportingFeature;
 
 import model.Budget;
+import model.Progress;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 
 /**
  * The Exportable interface defines a contract for classes that can export a Budget object
  * to a specified file.
+ * <p>
+ * Exporters write to the {@link #temporaryFile(Path) temporary file} of the target and only replace the target
+ * with it once the export is complete, so that a failed or cancelled export leaves the target as it was.
  *
  * @author Alessandro Catenacci
  */
@@ -16,4 +26,44 @@ public interface Exportable {
      * @param budget the Budget object to be exported.
      */
     void export(String fileName, Budget budget);
+
+    /**
+     * Export the specified Budget object to a file with the given file name, reporting the progress of the export
+     * and stopping if it is cancelled.
+     * <p>
+     * The default implementation reports nothing and cannot be cancelled.
+     *
+     * @param fileName the name of the file to which the Budget object should be exported.
+     * @param budget the Budget object to be exported.
+     * @param progress the progress to report to.
+     * @throws IOException if the file cannot be written.
+     */
+    default void export(String fileName, Budget budget, Progress progress) throws IOException {
+        export(fileName, budget);
+    }
+
+    /**
+     * Returns the file an export to the given file is written to before it replaces it.
+     *
+     * @param file the file exported to.
+     * @return the temporary file, next to it.
+     */
+    static Path temporaryFile(Path file) {
+        return file.resolveSibling(file.getFileName() + ".tmp");
+    }
+
+    /**
+     * Replaces a file with its complete temporary file, atomically where the file system allows it.
+     *
+     * @param file the file exported to.
+     * @throws IOException if the file cannot be replaced.
+     */
+    static void replaceWithTemporaryFile(Path file) throws IOException {
+        try {
+            Files.move(temporaryFile(file), file, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporaryFile(file), file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
 }
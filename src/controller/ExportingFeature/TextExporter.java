@@ -1,11 +1,18 @@
 package controller.ExportingFeature;
 
 import model.Budget;
+import model.Money;
+import model.Progress;
 import model.Transaction;
+import org.apache.commons.io.output.CountingOutputStream;
 
 import java.io.BufferedWriter;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.text.DecimalFormat;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
@@ -30,11 +37,33 @@ public class TextExporter implements Exportable {
      */
     @Override
     public void export(String fileName, Budget budget) {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(fileName))) {
+        try {
+            export(fileName, budget, Progress.NONE);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Exports the budget data to a text file, reporting each transaction written.
+     *
+     * @param fileName The name of the file to export to.
+     * @param budget The budget to export.
+     * @param progress The progress to report to.
+     * @throws IOException If the file cannot be written.
+     */
+    @Override
+    public void export(String fileName, Budget budget, Progress progress) throws IOException {
+        List<Transaction> transactions = budget.getTransactions();
+        progress.start(transactions.size());
+        Path file = Path.of(fileName);
+        Path temporaryFile = Exportable.temporaryFile(file);
+        CountingOutputStream output = new CountingOutputStream(new FileOutputStream(temporaryFile.toFile()));
+        long reported = 0;
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(output, Charset.defaultCharset()))) {
             // calculate the column widths and separator length
-            List<Transaction> transactions = budget.getTransactions();
             int idWidth = Math.max("ID".length(), transactions.stream()
-                    .mapToInt(t -> Integer.toString(t.getId()).length()).max().orElse(0));
+                    .mapToInt(t -> Long.toString(t.getId()).length()).max().orElse(0));
             int dateWidth = Math.max("Date".length(), transactions.stream()
                     .mapToInt(t -> t.getTransactionDate().format(DATE_FORMAT).length()).max().orElse(0));
             int descriptionWidth = Math.max("Description".length(), transactions.stream()
@@ -56,20 +85,28 @@ public class TextExporter implements Exportable {
 
             // write each transaction to a separate line in the file
             for (Transaction transaction : transactions) {
+                progress.checkCancelled();
                 writer.write(String.format(format,
                         transaction.getId(),
                         transaction.getTransactionDate().format(DATE_FORMAT),
                         transaction.getDescription(),
                         formatAmount(transaction.getAmount())));
                 writer.newLine();
+                long written = output.getByteCount();
+                progress.advance(1, written - reported);
+                reported = written;
             }
 
             // write footer separator
             writer.write(separator);
             writer.newLine();
-        } catch (IOException e) {
-            e.printStackTrace();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporaryFile);
+            throw e;
         }
+        // the last rows only reach the file when the writer is closed
+        progress.advance(0, output.getByteCount() - reported);
+        Exportable.replaceWithTemporaryFile(file);
     }
 
     /**
@@ -78,13 +115,13 @@ public class TextExporter implements Exportable {
      * @param amount The amount to format.
      * @return The formatted amount as a string.
      */
-    private String formatAmount(double amount) {
+    private String formatAmount(Money amount) {
         DecimalFormat decimalFormat;
-        if (amount == (int) amount) {
+        if (amount.minorUnits() % Money.MINOR_UNITS_PER_UNIT == 0) {
             decimalFormat = new DecimalFormat("#,##0");
         } else {
             decimalFormat = new DecimalFormat("#,##0.00");
         }
-        return decimalFormat.format(amount);
+        return decimalFormat.format(amount.toBigDecimal());
     }
 }
\ No newline at end of file
@@ -1,8 +1,8 @@
 package controller.TransactionController;
 
 import model.Budget;
+import model.Money;
 import model.Transaction;
-import view.components.BudgetTableModel;
 import view.panels.BudgetPanel.BudgetStatusPanel;
 import view.panels.TransactionPanel.TransactionAddPanel;
 
@@ -27,23 +27,20 @@ public class TransactionAddController implements ActionListener {
     private static final String CANCEL = "Cancel";
 
     private Budget budget;
-    private BudgetTableModel tableModel;
     private TransactionAddPanel transactionAddPanel;
     private BudgetStatusPanel budgetStatusPanel;
 
     /**
-     * Constructs an TransactionAddController with the given Budget, BudgetTableModel, TransactionAddPanel,
-     * and BudgetStatusPanel.
+     * Constructs an TransactionAddController with the given Budget, TransactionAddPanel and BudgetStatusPanel.
+     * The budget table is updated by its model, which listens to the budget.
      *
      * @param budget the budget to add transactions to
-     * @param tableModel the table model for the budget table
      * @param transactionAddPanel the panel for adding transactions
      * @param budgetStatusPanel the panel for displaying budget status
      */
-    public TransactionAddController(Budget budget, BudgetTableModel tableModel,
-                                    TransactionAddPanel transactionAddPanel, BudgetStatusPanel budgetStatusPanel) {
+    public TransactionAddController(Budget budget, TransactionAddPanel transactionAddPanel,
+                                    BudgetStatusPanel budgetStatusPanel) {
         this.budget = budget;
-        this.tableModel = tableModel;
         this.transactionAddPanel = transactionAddPanel;
         this.budgetStatusPanel = budgetStatusPanel;
 
@@ -64,9 +61,9 @@ public class TransactionAddController implements ActionListener {
             Date date = (Date) transactionAddPanel.getDateSpinner().getValue();
             Instant instant = date.toInstant();
             LocalDateTime localDateTime = instant.atZone(ZoneId.systemDefault()).toLocalDateTime();
-            float amount;
+            Money amount;
             try {
-                amount = Float.parseFloat(transactionAddPanel.getAmountField().getText());
+                amount = Money.parse(transactionAddPanel.getAmountField().getText());
             } catch (NumberFormatException nfe) {
                 JOptionPane.showMessageDialog(null,
                         "Invalid amount entered", "Error",
@@ -75,7 +72,6 @@ public class TransactionAddController implements ActionListener {
             }
             String description = transactionAddPanel.getDescriptionField().getText();
             budget.addTransaction(new Transaction(amount, localDateTime, description));
-            tableModel.fireTableDataChanged();
             // Update the entriesLabel and totalLabel in the BudgetStatusPanel
             budgetStatusPanel.updateBudget();
 
@@ -1,8 +1,8 @@
 package controller.TransactionController;
 
 import model.Budget;
+import model.Money;
 import model.Transaction;
-import view.components.BudgetTableModel;
 import view.panels.BudgetPanel.BudgetStatusPanel;
 import view.panels.TransactionPanel.TransactionModifyPanel;
 
@@ -20,7 +20,6 @@ public class TransactionModifyController {
     private Budget budget;
     private final TransactionModifyPanel transactionModifyPanel;
     private final BudgetStatusPanel budgetStatusPanel;
-    private final BudgetTableModel tableModel;
 
     private static final String SELECT_TRANSACTION_MSG = "Please select a transaction to modify.";
     private static final String NO_TRANSACTION_SELECTED_MSG = "No transaction selected";
@@ -31,16 +30,12 @@ public class TransactionModifyController {
      * @param budget The {@link Budget} that the transactions are being modified in.
      * @param transactionModifyPanel The {@link TransactionModifyPanel}that is being used to modify the transactions.
      * @param budgetStatusPanel The {@link BudgetStatusPanel} that is being updated when transactions are modified.
-     * @param tableModel The {@link  view.components.BudgetTableModel} that is being updated when
-     *                   transactions are modified.
      */
     public TransactionModifyController(Budget budget, TransactionModifyPanel transactionModifyPanel,
-                                       BudgetStatusPanel budgetStatusPanel,
-                                       BudgetTableModel tableModel) {
+                                       BudgetStatusPanel budgetStatusPanel) {
         this.budget = budget;
         this.transactionModifyPanel = transactionModifyPanel;
         this.budgetStatusPanel = budgetStatusPanel;
-        this.tableModel = tableModel;
 
         populateTransactionComboBox();
 
@@ -48,7 +43,7 @@ public class TransactionModifyController {
             Object selectedItem = transactionModifyPanel.getTransactionComboBox().getSelectedItem();
             if (selectedItem != null) {
                 transactionModifyPanel.getActionButton().setEnabled(true);
-                populateFieldsWithTransaction((int) selectedItem);
+                populateFieldsWithTransaction((long) selectedItem);
             } else {
                 transactionModifyPanel.getActionButton().setEnabled(false);
                 clearFields();
@@ -59,17 +54,16 @@ public class TransactionModifyController {
             Object selectedItem = transactionModifyPanel.getTransactionComboBox().getSelectedItem();
             if (selectedItem != null) {
                 try {
-                    int selectedId = (int) selectedItem;
+                    long selectedId = (long) selectedItem;
                     Transaction selectedTransaction = budget.getTransactionById(selectedId);
 
-                    float newAmount = Float.parseFloat(transactionModifyPanel.getAmountTextField().getText());
+                    Money newAmount = Money.parse(transactionModifyPanel.getAmountTextField().getText());
                     LocalDateTime newDate = LocalDateTime.parse(transactionModifyPanel.getDateTextField().getText(),
                             DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss"));
                     String newDescription = transactionModifyPanel.getDescriptionTextField().getText();
 
                     budget.modifyTransaction(selectedTransaction, newAmount, newDate, newDescription);
                     populateTransactionComboBox();
-                    tableModel.fireTableDataChanged();
                     budgetStatusPanel.updateBudget();
                     disposeDialog(transactionModifyPanel);
                 } catch (NumberFormatException e) {
@@ -119,13 +113,13 @@ public class TransactionModifyController {
                 transactionModifyPanel.getTransactionComboBox().addItem(transaction.getId());
             }
             if (transactionModifyPanel.getTransactionComboBox().getItemCount() > 0) {
-                Integer selectedItem = (Integer) transactionModifyPanel.getTransactionComboBox().getSelectedItem();
+                Long selectedItem = (Long) transactionModifyPanel.getTransactionComboBox().getSelectedItem();
                 if (selectedItem != null) {
-                    int selectedId = selectedItem;
+                    long selectedId = selectedItem;
                     populateFieldsWithTransaction(selectedId);
                 } else {
                     transactionModifyPanel.getTransactionComboBox().setSelectedIndex(0);
-                    populateFieldsWithTransaction((int) transactionModifyPanel.getTransactionComboBox().getSelectedItem());
+                    populateFieldsWithTransaction((long) transactionModifyPanel.getTransactionComboBox().getSelectedItem());
                 }
                 transactionModifyPanel.getActionButton().setEnabled(true);
             }
@@ -138,9 +132,9 @@ public class TransactionModifyController {
      *
      * @param transactionId the ID of the transaction to populate the fields with
      */
-    private void populateFieldsWithTransaction(int transactionId) {
+    private void populateFieldsWithTransaction(long transactionId) {
         Transaction selectedTransaction = budget.getTransactionById(transactionId);
-        transactionModifyPanel.getAmountTextField().setText(Float.toString(selectedTransaction.getAmount()));
+        transactionModifyPanel.getAmountTextField().setText(selectedTransaction.getAmount().toString());
 
         // Format the transaction date as a string using a DateTimeFormatter
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
@@ -62,9 +62,8 @@ public class TransactionRemoveController {
 
                 budget.deleteTransaction(transaction);
 
-                // Update the status panel and table model
+                // Update the status panel, the table model updates itself
                 statusPanel.updateBudget();
-                tableModel.fireTableDataChanged();
 
                 int removeMoreResult = JOptionPane.showConfirmDialog(view,
                         "Transaction removed. Do you want to remove more transactions?",
@@ -91,7 +90,6 @@ public class TransactionRemoveController {
 
                 budget.removeAllTransactions();
                 //Update the status panel
-                tableModel.fireTableDataChanged();
                 statusPanel.updateBudget();
 
                 JOptionPane.showMessageDialog(view, "All transactions removed successfully",
@@ -0,0 +1,74 @@
+package model;
+
+/**
+ * Aggregation loops over columns of amounts in minor units, used to compute the aggregates of a
+ * {@link Budget} from scratch.
+ * <p>
+ * Each kernel is a plain counted loop over a primitive array with a single accumulator, no branches and
+ * no early exit, which is the shape the HotSpot JIT auto-vectorizes; the positive and negative parts are
+ * selected with sign masks rather than comparisons for the same reason. Sums are exact as long as they fit
+ * in a {@code long}, i.e. below about 92 quadrillion major units.
+ *
+ * @author Alessandro Catenacci
+ */
+final class AmountKernels {
+    private AmountKernels() {
+    }
+
+    /**
+     * Returns the sum of {@code values[from, to)}.
+     */
+    static long sum(long[] values, int from, int to) {
+        long sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += values[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the sum of the positive values of {@code values[from, to)}.
+     */
+    static long sumPositive(long[] values, int from, int to) {
+        long sum = 0;
+        for (int i = from; i < to; i++) {
+            long value = values[i];
+            sum += value & ~(value >> 63);
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the sum of the negative values of {@code values[from, to)}.
+     */
+    static long sumNegative(long[] values, int from, int to) {
+        long sum = 0;
+        for (int i = from; i < to; i++) {
+            long value = values[i];
+            sum += value & (value >> 63);
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the smallest value of {@code values[from, to)}, or {@link Long#MAX_VALUE} if the range is empty.
+     */
+    static long min(long[] values, int from, int to) {
+        long min = Long.MAX_VALUE;
+        for (int i = from; i < to; i++) {
+            min = Math.min(min, values[i]);
+        }
+        return min;
+    }
+
+    /**
+     * Returns the largest value of {@code values[from, to)}, or {@link Long#MIN_VALUE} if the range is empty.
+     */
+    static long max(long[] values, int from, int to) {
+        long max = Long.MIN_VALUE;
+        for (int i = from; i < to; i++) {
+            max = Math.max(max, values[i]);
+        }
+        return max;
+    }
+}
@@ -0,0 +1,483 @@
+package model;
+
+import javax.swing.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * AutoSaveScheduler saves a Budget object to a temporary file as it is edited, and provides a method for
+ * retrieving the saved Budget from the temporary file.
+ * <p>
+ * The temporary file holds a checkpoint of the budget, and a {@link BudgetJournal} next to it records every
+ * change made since. The scheduler listens to the budget and only saves when its version has changed since the
+ * last save: a burst of edits is coalesced into one commit of the journal, written once the budget has been
+ * left alone for the debounce window of the {@link Policy}, or sooner if the changes have waited for its
+ * maximum latency or have grown past its byte limit. An idle budget has no pending save and costs no I/O at
+ * all. Once the journal outgrows the checkpoint, a new checkpoint is saved from a {@link Budget#snapshot()}
+ * and the journal is emptied, while the user keeps editing.
+ * <p>
+ * All the saves run on a single daemon thread shared by every scheduler, so they never overlap and opening
+ * another budget does not start another thread. The schedulers still running when the JVM exits are stopped
+ * by a shutdown hook, which waits for their last changes to be saved.
+ *
+ * @author Alessandro Catenacci
+ */
+public final class AutoSaveScheduler {
+    private static final String TEMP_FILE_NAME = "temp_budget.bma";
+    private static final String JOURNAL_SUFFIX = ".journal";
+    /**
+     * A checkpoint is saved once the journal is larger than both this size and the last checkpoint, so that
+     * recovering never replays more than it loads.
+     */
+    private static final long MIN_JOURNAL_SIZE_TO_CHECKPOINT = 1 << 20;
+    private static final long NONE = Long.MIN_VALUE;
+    /** Longest time {@link #stop()} waits for the last changes to be saved, so that it never freezes the UI. */
+    private static final long STOP_TIMEOUT = TimeUnit.MILLISECONDS.toNanos(200);
+
+    private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "budget-autosave");
+        thread.setDaemon(true);
+        return thread;
+    });
+    /** Schedulers started and not yet stopped. */
+    private static final Set<AutoSaveScheduler> RUNNING = ConcurrentHashMap.newKeySet();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(AutoSaveScheduler::stopAll, "budget-autosave-shutdown"));
+    }
+
+    private final Budget budget;
+    private final Path tempFile;
+    private final Path journalFile;
+    private final Policy policy;
+    private final BudgetListener listener = event -> changed();
+
+    // Guarded by this scheduler
+    private boolean started;
+    private boolean stopped;
+    /** Time of the first change not yet saved, or NONE if the budget is clean. */
+    private long firstChange = NONE;
+    private long lastChange;
+    private ScheduledFuture<?> pendingSave;
+    private ScheduledFuture<?> pendingSync;
+
+    /** Set on the autosave thread, and read by {@link #changed()} for the size of the pending changes. */
+    private volatile BudgetJournal journal;
+    // Only used on the autosave thread
+    private long savedVersion;
+    private long checkpointSize;
+    private long lastSync;
+    /** Whether a checkpoint of this budget is on disk, before which the journal only holds older records. */
+    private boolean checkpointSaved;
+
+    /**
+     * Constructs an AutoSaveScheduler saving the specified {@link Budget} object to the default temporary file,
+     * with the {@link Policy#DEFAULT default} policy.
+     *
+     * @param budget the Budget object to be saved
+     */
+    public AutoSaveScheduler(Budget budget) {
+        this(budget, defaultTempFile(), Policy.DEFAULT);
+    }
+
+    /**
+     * Constructs an AutoSaveScheduler saving the specified {@link Budget} object.
+     *
+     * @param budget   the Budget object to be saved
+     * @param tempFile the temporary file holding the checkpoint; the journal is written next to it
+     * @param policy   the limits of the autosave
+     */
+    public AutoSaveScheduler(Budget budget, Path tempFile, Policy policy) {
+        this.budget = budget;
+        this.tempFile = tempFile;
+        this.journalFile = journalFile(tempFile);
+        this.policy = policy;
+    }
+
+    private static Path defaultTempFile() {
+        return new File(System.getProperty("java.io.tmpdir"), TEMP_FILE_NAME).toPath();
+    }
+
+    private static Path journalFile(Path tempFile) {
+        return tempFile.resolveSibling(tempFile.getFileName() + JOURNAL_SUFFIX);
+    }
+
+    /**
+     * Starts saving the budget: saves a checkpoint of it now, and then its changes as they are made.
+     *
+     * @throws IllegalStateException if the scheduler has already been started
+     */
+    public synchronized void start() {
+        if (started) {
+            throw new IllegalStateException("Autosave already started");
+        }
+        started = true;
+        RUNNING.add(this);
+        pendingSave = EXECUTOR.schedule(this::saveFirstCheckpoint, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stops saving the budget, and commits the changes not yet saved to the journal, so the budget can still be
+     * retrieved from the temporary file. This method waits at most 200 milliseconds for the commit, which may be
+     * queued behind a checkpoint of a large budget: the commit then completes in the background, or before the
+     * JVM exits.
+     */
+    public void stop() {
+        Future<?> lastSave = stopSaving();
+        if (lastSave != null) {
+            await(lastSave, STOP_TIMEOUT);
+        }
+    }
+
+    /**
+     * Stops the schedulers still running when the JVM exits, and waits for their last changes to be saved.
+     */
+    private static void stopAll() {
+        for (AutoSaveScheduler scheduler : RUNNING) {
+            Future<?> lastSave = scheduler.stopSaving();
+            if (lastSave != null) {
+                await(lastSave, Long.MAX_VALUE);
+            }
+        }
+    }
+
+    /**
+     * Stops listening to the budget and cancels the pending saves.
+     *
+     * @return the commit of the last changes, or null if the scheduler was not running
+     */
+    private Future<?> stopSaving() {
+        synchronized (this) {
+            if (!started || stopped) {
+                return null;
+            }
+            stopped = true;
+            RUNNING.remove(this);
+            budget.removeBudgetListener(listener);
+            cancel(pendingSave);
+            cancel(pendingSync);
+            pendingSave = null;
+            pendingSync = null;
+        }
+        return EXECUTOR.submit(this::saveLastChanges);
+    }
+
+    /**
+     * Waits for a save to complete, for at most the given number of nanoseconds.
+     */
+    private static void await(Future<?> save, long timeout) {
+        long deadline = System.nanoTime() + timeout;
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (timeout == Long.MAX_VALUE) {
+                    save.get();
+                } else {
+                    save.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                }
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            } catch (ExecutionException e) {
+                e.getCause().printStackTrace();
+                break;
+            } catch (TimeoutException e) {
+                break;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void cancel(ScheduledFuture<?> future) {
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
+    /**
+     * Called on the thread that changed the budget: marks it dirty and makes sure a save is scheduled.
+     */
+    private void changed() {
+        long now = System.nanoTime();
+        synchronized (this) {
+            if (stopped) {
+                return;
+            }
+            if (firstChange == NONE) {
+                firstChange = now;
+            }
+            lastChange = now;
+            if (journal != null && journal.pendingSize() >= policy.maxPendingBytes()) {
+                // Too many bytes waiting: commit now instead of waiting for the debounce window
+                if (pendingSave == null || pendingSave.getDelay(TimeUnit.NANOSECONDS) > 0) {
+                    cancel(pendingSave);
+                    pendingSave = EXECUTOR.schedule(this::save, 0, TimeUnit.NANOSECONDS);
+                }
+            } else if (pendingSave == null) {
+                // Later changes do not reschedule the save; it waits again when it runs, if it is too early
+                pendingSave = EXECUTOR.schedule(this::save, policy.debounce().toNanos(), TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private void saveFirstCheckpoint() {
+        synchronized (this) {
+            pendingSave = null;
+            if (stopped) {
+                return;
+            }
+            firstChange = NONE;
+        }
+        lastSync = System.nanoTime();
+        try {
+            // The file may hold the last changes of the budget opened before, which must stay recoverable with
+            // its checkpoint until this checkpoint replaces it: the journal is only emptied once it is on disk,
+            // and its groups are of the generation of the previous checkpoint, so they are never replayed on
+            // this one
+            journal = BudgetJournal.open(journalFile);
+            // Listen before the checkpoint, so no change is missed between the snapshot and the listener
+            budget.addBudgetListener(listener);
+            budget.setJournal(journal);
+            saveCheckpoint();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Commits the changes of the budget once they have settled, and saves a checkpoint if the journal has
+     * grown too large.
+     */
+    private void save() {
+        long now = System.nanoTime();
+        synchronized (this) {
+            pendingSave = null;
+            if (stopped || firstChange == NONE) {
+                return;
+            }
+            long due = Math.min(lastChange + policy.debounce().toNanos(),
+                    firstChange + policy.maxLatency().toNanos());
+            boolean full = journal != null && journal.pendingSize() >= policy.maxPendingBytes();
+            if (due - now > 0 && !full) {
+                pendingSave = EXECUTOR.schedule(this::save, due - now, TimeUnit.NANOSECONDS);
+                return;
+            }
+            firstChange = NONE;
+        }
+        if (journal == null || budget.getVersion() == savedVersion) {
+            return;
+        }
+        try {
+            if (!checkpointSaved) {
+                // The first checkpoint failed: the changes cannot be committed over the records of the previous one
+                saveCheckpoint();
+                return;
+            }
+            commit();
+            if (journal.size() > Math.max(MIN_JOURNAL_SIZE_TO_CHECKPOINT, checkpointSize)) {
+                saveCheckpoint();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Commits the journal, and forces it to disk unless the last sync is more recent than the minimum sync
+     * interval of the policy, in which case the sync is scheduled for the end of that interval.
+     */
+    private void commit() throws IOException {
+        long version = budget.getVersion();
+        long now = System.nanoTime();
+        long nextSync = lastSync + policy.minSyncInterval().toNanos();
+        boolean sync = nextSync - now <= 0;
+        journal.commit(sync);
+        savedVersion = version;
+        if (sync) {
+            lastSync = now;
+        } else {
+            synchronized (this) {
+                if (pendingSync == null && !stopped) {
+                    pendingSync = EXECUTOR.schedule(this::sync, nextSync - now, TimeUnit.NANOSECONDS);
+                }
+            }
+        }
+    }
+
+    private void sync() {
+        synchronized (this) {
+            pendingSync = null;
+            if (stopped) {
+                return;
+            }
+        }
+        try {
+            journal.sync();
+            lastSync = System.nanoTime();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void saveLastChanges() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            if (checkpointSaved) {
+                journal.commit(true);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            budget.setJournal(null);
+            try {
+                journal.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            journal = null;
+        }
+    }
+
+    /**
+     * Saves a snapshot of the budget to the temporary file and empties the journal, whose changes it includes.
+     */
+    private void saveCheckpoint() throws IOException {
+        BudgetSnapshot snapshot = budget.checkpoint();
+        long generation = newGeneration();
+        try {
+            BudgetFile.save(snapshot, tempFile, policy.compression(), generation);
+        } catch (IOException e) {
+            if (checkpointSaved) {
+                journal.checkpointFailed();
+            } else {
+                journal.discardSealed();
+            }
+            throw e;
+        }
+        journal.checkpointed(generation);
+        checkpointSaved = true;
+        savedVersion = snapshot.getVersion();
+        checkpointSize = Files.size(tempFile);
+        lastSync = System.nanoTime();
+    }
+
+    /**
+     * Returns a random generation for a checkpoint, never zero, which stands for a file saved without one.
+     */
+    private static long newGeneration() {
+        long generation;
+        do {
+            generation = ThreadLocalRandom.current().nextLong();
+        } while (generation == 0);
+        return generation;
+    }
+
+    /**
+     * Retrieves the Budget saved in the default temporary file and the changes recorded in its journal, if the
+     * user agrees. The files are deleted either way.
+     *
+     * @return the saved Budget, or null if there is none or the user declined it
+     */
+    public static Budget retrieveBudgetFromTempFile() {
+        return retrieveBudgetFromTempFile(defaultTempFile());
+    }
+
+    /**
+     * Retrieves the Budget saved in a temporary file and the changes recorded in its journal, if the user
+     * agrees. The files are deleted either way.
+     *
+     * @param tempFile the temporary file, as given to {@link #AutoSaveScheduler(Budget, Path, Policy)}
+     * @return the saved Budget, or null if there is none or the user declined it
+     */
+    public static Budget retrieveBudgetFromTempFile(Path tempFile) {
+        File file = tempFile.toFile();
+        if (!file.exists() || file.length() == 0) {
+            return null;
+        }
+
+        File journal = journalFile(tempFile).toFile();
+        try {
+            Budget retrievedBudget = BudgetJournal.recover(tempFile, journal.toPath());
+            if (!retrievedBudget.getTransactions().isEmpty()) {
+                int result = JOptionPane.showConfirmDialog(null,
+                        "A temporary file has been found.\n" +
+                                "Do you want to retrieve the budget from it?",
+                        "Retrieve Budget", JOptionPane.YES_NO_OPTION);
+
+                if (result == JOptionPane.YES_OPTION) {
+                    return retrievedBudget;
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            if (!file.delete()) {
+                System.out.println("Failed to delete temp file");
+            }
+            if (journal.exists() && !journal.delete()) {
+                System.out.println("Failed to delete journal file");
+            }
+        }
+
+        return null;
+    }
+
+    public Budget getBudget() {
+        return budget;
+    }
+
+    /**
+     * The limits of an {@link AutoSaveScheduler}.
+     *
+     * @param debounce        how long the budget must be left unchanged before its changes are saved
+     * @param maxLatency      the longest a change waits before it is saved, however often the budget changes
+     * @param maxPendingBytes the size of the unsaved changes above which they are saved without waiting
+     * @param minSyncInterval the shortest time between two syncs of the journal; the commits made in between are
+     *                        written but only forced to disk at the end of the interval. Zero syncs every commit
+     * @param compression     the compression of the checkpoints
+     */
+    public record Policy(Duration debounce, Duration maxLatency, long maxPendingBytes, Duration minSyncInterval,
+                         BudgetFile.Compression compression) {
+        /**
+         * Saves 500 milliseconds after the last change, at most 5 seconds after the first one or once 1 MiB of
+         * changes is waiting, syncs every commit, and deflates the checkpoints.
+         */
+        public static final Policy DEFAULT = new Policy(Duration.ofMillis(500), Duration.ofSeconds(5), 1 << 20,
+                Duration.ZERO, BudgetFile.Compression.DEFLATE);
+
+        /**
+         * @throws IllegalArgumentException if a duration is negative, the maximum latency is shorter than the
+         *                                  debounce window, or the byte limit is not positive
+         */
+        public Policy {
+            if (debounce.isNegative() || minSyncInterval.isNegative()) {
+                throw new IllegalArgumentException("Durations cannot be negative");
+            }
+            if (maxLatency.compareTo(debounce) < 0) {
+                throw new IllegalArgumentException("Maximum latency cannot be shorter than the debounce window");
+            }
+            if (maxPendingBytes <= 0) {
+                throw new IllegalArgumentException("Maximum pending bytes must be positive");
+            }
+            Objects.requireNonNull(compression, "Compression must not be null");
+        }
+    }
+}
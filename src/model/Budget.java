@@ -1,77 +1,520 @@
 package model;
 
-import java.io.Serializable;
+import java.io.*;
+import java.nio.file.Path;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * A class that represents a budget and all its transactions.
- * The transactions are stored in an ArrayList.
- * A thread-safe hash map is used to keep track of the transaction indices.
+ * The transactions are stored column by column in a {@link ColumnStore}: ids, dates (as epoch seconds),
+ * amounts and descriptions each live in their own array. {@link Transaction} objects are only created
+ * on demand, when a row is read through {@link #getTransactions()} or one of the lookup methods.
+ * {@link #mapped(Path)} creates a budget whose columns are kept in a memory-mapped file instead.
+ * A {@link SortedRowIndex} keeps the rows ordered by date, so that date-range filters only visit
+ * the matching rows, and an {@link IdIndex} finds the row of an id in constant time. Ids are unique
+ * within a budget: they are handed out by the budget's {@link IdAllocator} when transactions are added.
+ * Amounts are exact {@link Money} values, stored as {@code long} minor units. The count, sums and
+ * extremes of the amounts are maintained on every change and read through {@link #getSummary()}, and so
+ * are the totals per day, month and year, read through {@link #getRollup} and used by {@link #sumBetween}.
+ * <p>
+ * Deleted rows are left in place as tombstones, which keeps deletes free of shifting and index
+ * rewrites. Once they make up a large enough share of the store, a background task copies the live rows into a
+ * compacted store, with its indexes, and swaps it in.
+ * <p>
+ * Every change increments the version of the budget. {@link #snapshot()} returns an immutable
+ * {@link BudgetSnapshot} of the current version, which shares the segments of the store instead of copying
+ * them: the store copies a segment only when it is written after a snapshot. A snapshot is created at most
+ * once per version and is read without holding the lock of the budget.
+ * <p>
+ * The budget is safe for use by several threads. It is guarded by a {@link StampedLock}: changes take the write
+ * lock, and so does the compaction, but only briefly at its start and its end; lookups and filters take the
+ * read lock and run in parallel with each other, and the version, the cached snapshot and the aggregates are
+ * read optimistically, without locking unless a write is in progress. Code that reads the whole budget while
+ * it is being edited, such as the autosave, the exporters or a background query, should work on a
+ * {@link #snapshot()}: it is consistent and never blocks or is blocked by the writers. Serialization does so
+ * as well.
+ * <p>
+ * Every change is reported to the registered {@link BudgetListener}s as a {@link BudgetEvent} holding the
+ * positions of the rows that changed, once the lock is released. The batch operations {@link #addAll},
+ * {@link #deleteAll} and {@link #modifyAll} lock the budget once, update the indexes and the aggregates in
+ * a single pass and report a single event.
  *
  * @author Alessandro Catenacci
  */
 public class Budget implements Serializable {
-    private final List<Transaction> transactions;
-    private final Map<Transaction, Integer> indices;
+    @Serial
+    private static final long serialVersionUID = 8566193963036433692L;
+
+    /**
+     * Budgets saved before the columnar layout stored a {@code transactions} list. The field is kept in the
+     * serial form so that those files can still be read; current budgets write it as {@code null} and
+     * append their columns after it.
+     */
+    @Serial
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("transactions", List.class)
+    };
+
+    /**
+     * Minimum number of deleted rows before a compaction is considered, so that small budgets never pay for it.
+     */
+    private static final int MIN_DEAD_ROWS_TO_COMPACT = 1024;
+
+    /**
+     * A compaction is scheduled once deleted rows make up this fraction of the store.
+     */
+    private static final double DEAD_ROW_RATIO_TO_COMPACT = 0.25;
+
+    /**
+     * Above this number of date (or amount) changes, {@link #modifyAll} rebuilds the date (or amount) index
+     * instead of moving each row.
+     */
+    private static final int MAX_INDEX_MOVES = 64;
+
+    /**
+     * Minimum number of rows to scan before a filter is run in parallel.
+     */
+    private static final int PARALLEL_FILTER_THRESHOLD = 1 << 16;
+
+    /**
+     * Minimum number of rows before the indexes are rebuilt in parallel.
+     */
+    private static final int PARALLEL_REBUILD_THRESHOLD = 1 << 16;
+
+    private static final ExecutorService COMPACTION_EXECUTOR = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "budget-compaction");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private transient StampedLock lock;
+    /** Number of threads waiting for the write lock, see {@link #acquireRead()}. */
+    private transient AtomicInteger waitingWriters;
+    private transient ColumnStore store;
+    private transient SortedRowIndex timeIndex;
+    private transient SortedRowIndex amountIndex;
+    private transient IdIndex idIndex;
+    /** Totals per day, month and year, indexed by {@link RollupPeriod#ordinal()}. */
+    private transient RollupTable[] rollups;
+    private transient IdAllocator idAllocator;
+    /** Journal recording the changes for the autosave, or null; guarded by the write lock. */
+    private transient BudgetJournal journal;
+
+    /** Aggregates of the live rows, in minor units. */
+    private transient long total;
+    private transient long income;
+    private transient long expense;
+    private transient long min;
+    private transient long max;
+    /** Set when the row holding the minimum or the maximum was deleted or modified. */
+    private transient boolean extremesStale;
+    private transient boolean compactionScheduled;
+    private transient long version;
+    /** Last snapshot returned by {@link #snapshot()}, reused while the version does not change. */
+    private transient BudgetSnapshot snapshot;
+    private transient List<BudgetListener> listeners;
 
     /**
      * Creates an empty Budget.
      */
     public Budget() {
-        transactions = new ArrayList<>();
-        indices = Collections.synchronizedMap(new HashMap<>());
+        initStorage(new ColumnStore());
+    }
+
+    private Budget(ColumnStore store) {
+        initStorage(store);
+    }
+
+    /**
+     * Creates an empty Budget whose transactions are kept in a memory-mapped file instead of the heap, for
+     * budgets too large to fit in memory. The budget behaves exactly like one created by {@link #Budget()};
+     * only the hot rows are held in memory, by the OS page cache. The indexes by id and by date, about
+     * 30 bytes per transaction, and the distinct descriptions stay on the heap.
+     * <p>
+     * The file is working storage, deleted once the budget is garbage collected or the JVM exits; the budget
+     * is saved like any other. A budget read back from a saved file lives on the heap.
+     *
+     * @param file the file to keep the transactions in; an existing file is replaced
+     * @return the new budget
+     * @throws IOException if the file cannot be created
+     */
+    public static Budget mapped(Path file) throws IOException {
+        return new Budget(new ColumnStore(MappedSegmentFile.create(file)));
+    }
+
+    private void initStorage(ColumnStore store) {
+        lock = new StampedLock();
+        waitingWriters = new AtomicInteger();
+        listeners = new CopyOnWriteArrayList<>();
+        this.store = store;
+        timeIndex = new SortedRowIndex(row -> store.epochSecond(row));
+        amountIndex = new SortedRowIndex(row -> store.amount(row));
+        idIndex = new IdIndex();
+        rollups = new RollupTable[RollupPeriod.values().length];
+        for (RollupPeriod period : RollupPeriod.values()) {
+            rollups[period.ordinal()] = new RollupTable(period);
+        }
+        idAllocator = new IdAllocator();
     }
 
     /**
      * Gets all the transactions in this budget.
+     * <p>
+     * The returned list is the {@link #snapshot()} of the current version: it is read-only, it does not
+     * reflect later changes, and each call to {@code get} creates a new {@link Transaction} holding a copy
+     * of the row. Nothing is copied when the list is created.
      *
      * @return A list of all transactions in this budget.
      */
     public List<Transaction> getTransactions() {
-        return new ArrayList<>(transactions);
+        return snapshot();
+    }
+
+    /**
+     * Returns an immutable view of the transactions of this budget at its current version.
+     * Calls made while the budget does not change return the same snapshot, so this is O(1) in that case
+     * and O(n / {@value ColumnStore#SEGMENT_SIZE}) otherwise. The snapshot can be read from any thread,
+     * without blocking the writers of the budget.
+     *
+     * @return the snapshot of the current version
+     */
+    public BudgetSnapshot snapshot() {
+        long stamp = lock.tryOptimisticRead();
+        BudgetSnapshot current = snapshot;
+        long currentVersion = version;
+        if (lock.validate(stamp) && current != null && current.getVersion() == currentVersion) {
+            return current;
+        }
+        // Freezing the segments of the store is a change to the store, made under the write lock
+        stamp = acquireWrite();
+        try {
+            if (snapshot == null || snapshot.getVersion() != version) {
+                snapshot = new BudgetSnapshot(this, version, store.snapshot());
+            }
+            return snapshot;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Returns the version of this budget, which is incremented by every change to its transactions.
+     *
+     * @return the current version
+     */
+    public long getVersion() {
+        long stamp = lock.tryOptimisticRead();
+        long currentVersion = version;
+        if (!lock.validate(stamp)) {
+            stamp = acquireRead();
+            try {
+                currentVersion = version;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return currentVersion;
     }
 
     /**
      * Sets the transactions in this budget.
+     * Transactions keep their id, unless they have none or it is already used by a previous transaction
+     * of the collection, in which case a new id is assigned.
      *
      * @param transactions The transactions to set.
      */
     public void setTransactions(Collection<Transaction> transactions) {
-        this.transactions.clear();
-        this.transactions.addAll(transactions);
-        indices.clear();
-        for (int i = 0; i < this.transactions.size(); i++) {
-            indices.put(this.transactions.get(i), i);
+        // Copy first: the collection may be a view over this very budget
+        List<Transaction> copy = new ArrayList<>(transactions);
+        BudgetEvent event;
+        long stamp = acquireWrite();
+        try {
+            store.clear();
+            idIndex.clear();
+            idIndex.ensureCapacity(copy.size());
+            resetAggregates();
+            for (Transaction transaction : copy) {
+                appendRow(transaction);
+            }
+            timeIndex.rebuild(store.rowCount());
+            amountIndex.rebuild(store.rowCount());
+            if (journal != null) {
+                journal.clear();
+                journalRows(0, store.rowCount());
+            }
+            event = BudgetEvent.reloaded(this, ++version);
+        } finally {
+            lock.unlockWrite(stamp);
         }
+        fireBudgetChanged(event);
     }
 
     /**
      * Adds a transaction to this budget.
+     * The transaction keeps its id if it has one that is not used in this budget; otherwise it is given a
+     * new id.
      *
      * @param transaction The transaction to add.
+     * @return The transaction as stored in this budget, with its id.
      */
-    public void addTransaction(Transaction transaction) {
-        transactions.add(transaction);
-        indices.put(transaction, transactions.size() - 1);
+    public Transaction addTransaction(Transaction transaction) {
+        Transaction added;
+        BudgetEvent event;
+        long stamp = acquireWrite();
+        try {
+            int row = appendRow(transaction);
+            timeIndex.insert(row);
+            amountIndex.insert(row);
+            journalRows(row, row + 1);
+            event = BudgetEvent.single(this, BudgetEvent.Type.INSERTED, store.liveCount() - 1, ++version);
+            added = store.materialize(row);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        fireBudgetChanged(event);
+        return added;
     }
 
     /**
-     * Deletes a transaction from this budget.
+     * Adds several transactions to this budget in one batch. Each transaction keeps its id as in
+     * {@link #addTransaction(Transaction)}. The date and amount indexes are updated with a single merge and one
+     * {@link BudgetEvent.Type#INSERTED} event is reported.
+     *
+     * @param transactions The transactions to add.
+     * @return The transactions as stored in this budget, with their ids, as a read-only list.
+     * @throws NullPointerException If a transaction has no date; nothing is added in that case.
+     */
+    public List<Transaction> addAll(Collection<Transaction> transactions) {
+        // Copy first: the collection may be a view over this very budget
+        List<Transaction> copy = new ArrayList<>(transactions);
+        for (Transaction transaction : copy) {
+            Objects.requireNonNull(transaction.getTransactionDate(), "Transaction date must not be null");
+        }
+        if (copy.isEmpty()) {
+            return List.of();
+        }
+        List<Transaction> added;
+        BudgetEvent event;
+        long stamp = acquireWrite();
+        try {
+            int firstRow = store.rowCount();
+            int firstPosition = store.liveCount();
+            idIndex.ensureCapacity(idIndex.size() + copy.size());
+            for (Transaction transaction : copy) {
+                appendRow(transaction);
+            }
+            timeIndex.insertAll(firstRow, store.rowCount());
+            amountIndex.insertAll(firstRow, store.rowCount());
+            journalRows(firstRow, store.rowCount());
+            int[] positions = new int[copy.size()];
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = firstPosition + i;
+            }
+            event = new BudgetEvent(this, BudgetEvent.Type.INSERTED, positions, ++version);
+            snapshot = new BudgetSnapshot(this, version, store.snapshot());
+            added = snapshot.subList(firstPosition, firstPosition + copy.size());
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        fireBudgetChanged(event);
+        return added;
+    }
+
+    /**
+     * Deletes a transaction from this budget. The row is only marked as deleted: it is skipped by every
+     * read from now on and physically removed by the next compaction.
      *
      * @param transaction The transaction to delete.
      * @throws IllegalArgumentException If the transaction is not found.
      */
     public void deleteTransaction(Transaction transaction) {
-        final int index = indices.remove(transaction);
-        if (index == -1) {
-            throw new IllegalArgumentException("Transaction not found");
+        BudgetEvent event;
+        long stamp = acquireWrite();
+        try {
+            final int row = idIndex.remove(transaction.getId());
+            if (row == -1) {
+                throw new IllegalArgumentException("Transaction not found");
+            }
+            int position = store.positionOf(row);
+            removeFromAggregates(row);
+            store.kill(row);
+            if (journal != null) {
+                journal.delete(transaction.getId());
+            }
+            event = BudgetEvent.single(this, BudgetEvent.Type.DELETED, position, ++version);
+            scheduleCompactionIfNeeded();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        fireBudgetChanged(event);
+    }
+
+    /**
+     * Deletes every transaction accepted by the given filter, in one batch reported by a single
+     * {@link BudgetEvent.Type#DELETED} event.
+     * <p>
+     * The filter is evaluated on a {@link #snapshot()}, without locking the budget, so it may read the budget.
+     * If the budget is changed by another thread in the meantime, the filter is evaluated again on the new
+     * version, so the deletion always applies to the version the filter has seen.
+     *
+     * @param filter The filter selecting the transactions to delete.
+     * @return The number of deleted transactions.
+     */
+    public int deleteAll(Predicate<? super Transaction> filter) {
+        Objects.requireNonNull(filter, "Filter must not be null");
+        while (true) {
+            BudgetSnapshot current = snapshot();
+            int[] positions = current.positionsMatching(filter);
+            if (positions.length == 0) {
+                return 0;
+            }
+            BudgetEvent event;
+            long stamp = acquireWrite();
+            try {
+                if (version != current.getVersion()) {
+                    continue;
+                }
+                // Resolve every row before the first deletion shifts the positions
+                int[] rows = new int[positions.length];
+                for (int i = 0; i < positions.length; i++) {
+                    rows[i] = store.rowAt(positions[i]);
+                }
+                for (int row : rows) {
+                    idIndex.remove(store.id(row));
+                    removeFromAggregates(row);
+                    store.kill(row);
+                    if (journal != null) {
+                        journal.delete(store.id(row));
+                    }
+                }
+                event = new BudgetEvent(this, BudgetEvent.Type.DELETED, positions, ++version);
+                scheduleCompactionIfNeeded();
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+            fireBudgetChanged(event);
+            return positions.length;
         }
-        transactions.remove(index);
-        indices.entrySet().removeIf(e -> e.getValue() > index);
-        for (int i = index; i < transactions.size(); i++) {
-            indices.put(transactions.get(i), i);
+    }
+
+    /**
+     * Modifies several transactions in one batch reported by a single {@link BudgetEvent.Type#UPDATED} event.
+     * <p>
+     * Each transaction is read, passed to {@code change}, which may update its amount, date and description
+     * through the setters of {@link Transaction}, and written back. {@code change} runs without locking the
+     * budget; if the budget is changed by another thread in the meantime, the transactions are read again and
+     * {@code change} is applied to the new version. When many dates or amounts change, the date or amount index
+     * is rebuilt once instead of moving each row.
+     *
+     * @param ids    The ids of the transactions to modify.
+     * @param change The change to apply to each transaction.
+     * @return The number of modified transactions.
+     * @throws IllegalArgumentException If an id is not found; nothing is modified in that case.
+     */
+    public int modifyAll(Collection<Long> ids, Consumer<? super Transaction> change) {
+        Objects.requireNonNull(change, "Change must not be null");
+        Set<Long> distinctIds = new LinkedHashSet<>(ids);
+        while (true) {
+            long expectedVersion;
+            List<Transaction> changed = new ArrayList<>(distinctIds.size());
+            long stamp = acquireRead();
+            try {
+                expectedVersion = version;
+                for (long id : distinctIds) {
+                    int row = idIndex.get(id);
+                    if (row == -1) {
+                        throw new IllegalArgumentException("Transaction not found: " + id);
+                    }
+                    changed.add(store.materialize(row));
+                }
+            } finally {
+                lock.unlockRead(stamp);
+            }
+            for (Transaction transaction : changed) {
+                change.accept(transaction);
+                Objects.requireNonNull(transaction.getTransactionDate(), "Transaction date must not be null");
+            }
+            if (changed.isEmpty()) {
+                return 0;
+            }
+
+            BudgetEvent event;
+            stamp = acquireWrite();
+            try {
+                if (version != expectedVersion) {
+                    continue;
+                }
+                int[] rows = new int[changed.size()];
+                long[] epochSeconds = new long[changed.size()];
+                long[] amounts = new long[changed.size()];
+                int dateChanges = 0;
+                int amountChanges = 0;
+                for (int i = 0; i < rows.length; i++) {
+                    rows[i] = idIndex.get(changed.get(i).getId());
+                    epochSeconds[i] = ColumnStore.toEpochSecond(changed.get(i).getTransactionDate());
+                    amounts[i] = changed.get(i).getAmount().minorUnits();
+                    if (epochSeconds[i] != store.epochSecond(rows[i])) {
+                        dateChanges++;
+                    }
+                    if (amounts[i] != store.amount(rows[i])) {
+                        amountChanges++;
+                    }
+                }
+                boolean rebuildDateIndex = dateChanges > MAX_INDEX_MOVES;
+                boolean rebuildAmountIndex = amountChanges > MAX_INDEX_MOVES;
+                int[] positions = new int[rows.length];
+                for (int i = 0; i < rows.length; i++) {
+                    int row = rows[i];
+                    Transaction transaction = changed.get(i);
+                    boolean moved = !rebuildDateIndex && epochSeconds[i] != store.epochSecond(row);
+                    boolean amountMoved = !rebuildAmountIndex && amounts[i] != store.amount(row);
+                    if (moved) {
+                        timeIndex.remove(row);
+                    }
+                    if (amountMoved) {
+                        amountIndex.remove(row);
+                    }
+                    removeFromAggregates(row);
+                    store.set(row, epochSeconds[i], amounts[i], transaction.getDescription());
+                    addToAggregates(row);
+                    if (moved) {
+                        timeIndex.insert(row);
+                    }
+                    if (amountMoved) {
+                        amountIndex.insert(row);
+                    }
+                    journalRows(row, row + 1);
+                    positions[i] = store.positionOf(row);
+                }
+                if (rebuildDateIndex) {
+                    timeIndex.rebuild(store.rowCount());
+                }
+                if (rebuildAmountIndex) {
+                    amountIndex.rebuild(store.rowCount());
+                }
+                Arrays.sort(positions);
+                event = new BudgetEvent(this, BudgetEvent.Type.UPDATED, positions, ++version);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+            fireBudgetChanged(event);
+            return changed.size();
         }
     }
 
@@ -86,13 +529,29 @@ public class Budget implements Serializable {
      */
     public void modifyTransaction(
             Transaction transaction,
-            float newAmount,
+            Money newAmount,
             LocalDateTime newDate,
             String newDescription) {
-        final Integer index = indices.get(transaction);
-        if (index == null) {
-            throw new IllegalArgumentException("Transaction not found");
+        BudgetEvent event;
+        long stamp = acquireWrite();
+        try {
+            final int row = idIndex.get(transaction.getId());
+            if (row == -1) {
+                throw new IllegalArgumentException("Transaction not found");
+            }
+            timeIndex.remove(row);
+            amountIndex.remove(row);
+            removeFromAggregates(row);
+            store.set(row, ColumnStore.toEpochSecond(newDate), newAmount.minorUnits(), newDescription);
+            addToAggregates(row);
+            timeIndex.insert(row);
+            amountIndex.insert(row);
+            journalRows(row, row + 1);
+            event = BudgetEvent.single(this, BudgetEvent.Type.UPDATED, store.positionOf(row), ++version);
+        } finally {
+            lock.unlockWrite(stamp);
         }
+        fireBudgetChanged(event);
         transaction.setAmount(newAmount);
         transaction.setTransactionDate(newDate);
         transaction.setDescription(newDescription);
@@ -105,15 +564,13 @@ public class Budget implements Serializable {
      * @return an Optional containing the found transaction, or empty if not found
      */
     public Optional<Transaction> searchTransaction(Transaction transaction) {
-        final Integer index = indices.get(transaction);
-        if (index == null) {
-            return Optional.empty();
-        }
-        return Optional.of(transactions.get(index));
+        return Optional.ofNullable(getTransactionById(transaction.getId()));
     }
 
     /**
      * Filters the transactions in the Budget object based on description and/or start date and end date.
+     * When the given list is the current snapshot of this budget, the query is answered by
+     * {@link #filterTransactions(String, LocalDateTime, LocalDateTime)} instead.
      *
      * @param transactions the transactions to filter
      * @param description  the description to filter the transactions by, can be null
@@ -124,7 +581,188 @@ public class Budget implements Serializable {
     public List<Transaction> filterTransactions(List<Transaction> transactions, String description,
                                                 LocalDateTime startDate, LocalDateTime endDate) {
         Objects.requireNonNull(transactions, "Transactions must not be null");
+        validateFilter(description, startDate, endDate);
+
+        if (transactions instanceof BudgetSnapshot list && list.budget() == this) {
+            long stamp = acquireRead();
+            try {
+                if (list.getVersion() == version) {
+                    return filterRows(description, startDate, endDate);
+                }
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        final String needle = description == null ? null : description.toLowerCase();
+        Stream<Transaction> stream = transactions.size() >= PARALLEL_FILTER_THRESHOLD
+                && ForkJoinPool.getCommonPoolParallelism() > 1
+                ? transactions.parallelStream() : transactions.stream();
+        return stream
+                .filter(t -> (needle == null || DescriptionDictionary.containsIgnoreCase(t.getDescription(), needle))
+                        && (startDate == null || t.getTransactionDate().isAfter(startDate))
+                        && (endDate == null || t.getTransactionDate().isBefore(endDate)))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Filters the transactions of this budget based on description and/or start date and end date.
+     * Both dates are exclusive, as in {@link #filterTransactions(List, String, LocalDateTime, LocalDateTime)}.
+     * <p>
+     * When a date is given, the date index is binary-searched for the first and last matching rows, so the
+     * cost is O(log n + k) for k rows in the range, and the result is in chronological order. Without dates,
+     * all the rows are scanned and the result keeps the order of the budget. Scans of more than
+     * {@value #PARALLEL_FILTER_THRESHOLD} rows are split across the common {@link ForkJoinPool}.
+     *
+     * @param description the description to filter the transactions by, can be null
+     * @param startDate   the start date to filter the transactions by, can be null
+     * @param endDate     the end date to filter the transactions by, can be null
+     * @return a List of filtered transactions
+     */
+    public List<Transaction> filterTransactions(String description, LocalDateTime startDate,
+                                                LocalDateTime endDate) {
+        validateFilter(description, startDate, endDate);
+        long stamp = acquireRead();
+        try {
+            return filterRows(description, startDate, endDate);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
 
+    /**
+     * Returns the transactions of this budget accepted by a query, in the order of the budget.
+     * <p>
+     * The query is planned over the indexes of the budget: the rows are taken from the most selective index
+     * that applies, or all scanned when that is cheaper, and checked against the whole query on the columns,
+     * so that only the accepted transactions are created. See {@link #explain(Query)} for the chosen plan.
+     *
+     * @param query the query to run
+     * @return a List of the accepted transactions
+     */
+    public List<Transaction> query(Query query) {
+        Objects.requireNonNull(query, "Query must not be null");
+        long stamp = acquireRead();
+        try {
+            QueryPlanner.Plan plan = new QueryPlanner(store, timeIndex, amountIndex, idIndex).plan(query);
+            if (plan.path() == null) {
+                return scanRows(0, store.rowCount(), position -> position, plan.matcher());
+            }
+            final int[] rows = plan.path().rows();
+            return scanRows(0, rows.length, position -> rows[position], plan.matcher());
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Describes how {@link #query(Query)} would run a query on the current transactions of this budget: the
+     * index used to find the candidate rows and its estimated number of rows, the rejected alternative, and
+     * the filter applied to the candidates.
+     *
+     * @param query the query to plan
+     * @return the plan, one step per line
+     */
+    public String explain(Query query) {
+        Objects.requireNonNull(query, "Query must not be null");
+        long stamp = acquireRead();
+        try {
+            return new QueryPlanner(store, timeIndex, amountIndex, idIndex).plan(query).explanation();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Returns the {@code n} transactions with the largest amounts among those accepted by a query, largest
+     * first; transactions with the same amount keep the order of the budget. No sort of the transactions is
+     * needed: when the query has a selective index, its candidates go through a heap of {@code n} rows, and
+     * otherwise the amount index is read from the largest amount down until {@code n} transactions match.
+     *
+     * @param n     the maximum number of transactions to return
+     * @param query the query the transactions must match, such as {@link Query#income()}
+     * @return a List of at most {@code n} transactions
+     * @throws IllegalArgumentException if {@code n} is negative
+     */
+    public List<Transaction> topN(int n, Query query) {
+        return rank(n, query, true);
+    }
+
+    /**
+     * Returns the {@code n} transactions with the smallest amounts among those accepted by a query, smallest
+     * first, e.g. the largest payments with {@link Query#expense()}. See {@link #topN(int, Query)}.
+     *
+     * @param n     the maximum number of transactions to return
+     * @param query the query the transactions must match
+     * @return a List of at most {@code n} transactions
+     * @throws IllegalArgumentException if {@code n} is negative
+     */
+    public List<Transaction> bottomN(int n, Query query) {
+        return rank(n, query, false);
+    }
+
+    private List<Transaction> rank(int n, Query query, boolean largest) {
+        Objects.requireNonNull(query, "Query must not be null");
+        if (n < 0) {
+            throw new IllegalArgumentException("Number of transactions cannot be negative");
+        }
+        long stamp = acquireRead();
+        try {
+            QueryPlanner.Plan plan = new QueryPlanner(store, timeIndex, amountIndex, idIndex).plan(query);
+            IntPredicate accept = row -> store.isLive(row) && plan.matcher().test(row);
+            int[] rows;
+            if (plan.path() != null) {
+                RowHeap heap = new RowHeap(Math.min(n, store.liveCount()), store::amount, largest);
+                for (int row : plan.path().rows()) {
+                    if (accept.test(row)) {
+                        heap.offer(row);
+                    }
+                }
+                rows = heap.drain();
+            } else {
+                rows = rankedRows(n, accept, largest);
+            }
+            List<Transaction> result = new ArrayList<>(rows.length);
+            for (int row : rows) {
+                result.add(store.materialize(row));
+            }
+            return result;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Reads the amount index from one end until {@code n} rows are accepted. The rows of each amount are
+     * read in ascending order, so that ties keep the order of the budget.
+     */
+    private int[] rankedRows(int n, IntPredicate accept, boolean largest) {
+        int[] rows = new int[Math.min(n, store.liveCount())];
+        int count = 0;
+        if (largest) {
+            int end = amountIndex.size();
+            while (count < rows.length && end > 0) {
+                int start = amountIndex.lowerBound(store.amount(amountIndex.rowAt(end - 1)));
+                for (int position = start; position < end && count < rows.length; position++) {
+                    int row = amountIndex.rowAt(position);
+                    if (accept.test(row)) {
+                        rows[count++] = row;
+                    }
+                }
+                end = start;
+            }
+        } else {
+            for (int position = 0; position < amountIndex.size() && count < rows.length; position++) {
+                int row = amountIndex.rowAt(position);
+                if (accept.test(row)) {
+                    rows[count++] = row;
+                }
+            }
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    private static void validateFilter(String description, LocalDateTime startDate, LocalDateTime endDate) {
         if (description != null && description.trim().isEmpty()) {
             throw new IllegalArgumentException("Description cannot be empty or whitespace");
         }
@@ -132,18 +770,233 @@ public class Budget implements Serializable {
         if (startDate != null && endDate != null && endDate.isBefore(startDate)) {
             throw new IllegalArgumentException("End date cannot be before start date");
         }
+    }
 
-        return transactions.stream()
-                .filter(t -> (description == null || t.getDescription()
-                        .toLowerCase().contains(description.toLowerCase()))
-                        && (startDate == null || t.getTransactionDate().isAfter(startDate))
-                        && (endDate == null || t.getTransactionDate().isBefore(endDate)))
-                .collect(Collectors.toList());
+    /**
+     * Answers a filter from the columns of this budget.
+     * Stored dates have no fractional seconds, so both bounds can be compared as epoch seconds:
+     * a row is after {@code startDate} if its second is greater, and before {@code endDate} if its
+     * second is smaller than the end rounded up to the next whole second.
+     */
+    private List<Transaction> filterRows(String description, LocalDateTime startDate, LocalDateTime endDate) {
+        final String needle = description == null ? null : description.toLowerCase();
+        // Match each distinct description once, then compare the codes of the rows
+        final boolean[] matches = needle == null ? null
+                : store.descriptionsMatching(text -> DescriptionDictionary.containsIgnoreCase(text, needle));
+        final IntPredicate accept = matches == null ? null
+                : row -> matchesDescription(store.descriptionCode(row), matches);
+
+        if (startDate == null && endDate == null) {
+            return scanRows(0, store.rowCount(), position -> position, accept);
+        }
+        final int from = startDate == null ? 0 : timeIndex.upperBound(ColumnStore.toEpochSecond(startDate));
+        final int to = endDate == null ? timeIndex.size()
+                : timeIndex.lowerBound(ColumnStore.toEpochSecond(endDate) + (endDate.getNano() > 0 ? 1 : 0));
+        return scanRows(from, to, timeIndex::rowAt, accept);
+    }
+
+    /**
+     * Collects the live rows at positions {@code [from, to)} that are accepted, in order. Large
+     * scans are split into chunks filtered in parallel by the common {@link ForkJoinPool}, while the calling
+     * thread holds the read lock; the chunks are concatenated in order.
+     *
+     * @param rowAt   maps a position to a row
+     * @param accept  the condition on the rows, or null to accept every live row
+     */
+    private List<Transaction> scanRows(int from, int to, IntUnaryOperator rowAt, IntPredicate accept) {
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        if (to - from < PARALLEL_FILTER_THRESHOLD || parallelism < 2) {
+            List<Transaction> result = new ArrayList<>();
+            scanRows(from, to, rowAt, accept, result);
+            return result;
+        }
+        int chunkCount = Math.min(parallelism * 4, (to - from) / (PARALLEL_FILTER_THRESHOLD / 4));
+        List<RecursiveTask<List<Transaction>>> chunks = new ArrayList<>(chunkCount);
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            int chunkFrom = from + (int) ((long) (to - from) * chunk / chunkCount);
+            int chunkTo = from + (int) ((long) (to - from) * (chunk + 1) / chunkCount);
+            chunks.add(new RecursiveTask<>() {
+                @Override
+                protected List<Transaction> compute() {
+                    List<Transaction> result = new ArrayList<>();
+                    scanRows(chunkFrom, chunkTo, rowAt, accept, result);
+                    return result;
+                }
+            });
+        }
+        ForkJoinTask.invokeAll(chunks);
+        int size = 0;
+        for (RecursiveTask<List<Transaction>> chunk : chunks) {
+            size += chunk.join().size();
+        }
+        List<Transaction> result = new ArrayList<>(size);
+        for (RecursiveTask<List<Transaction>> chunk : chunks) {
+            result.addAll(chunk.join());
+        }
+        return result;
+    }
+
+    private void scanRows(int from, int to, IntUnaryOperator rowAt, IntPredicate accept, List<Transaction> result) {
+        for (int position = from; position < to; position++) {
+            int row = rowAt.applyAsInt(position);
+            if (store.isLive(row) && (accept == null || accept.test(row))) {
+                result.add(store.materialize(row));
+            }
+        }
+    }
+
+    /**
+     * Returns the sum of the amounts of the transactions dated after {@code startDate} and before
+     * {@code endDate}, i.e. of the transactions returned by {@link #filterTransactions(String, LocalDateTime,
+     * LocalDateTime)} for these dates, without creating them. Whole days are summed from per-day totals in
+     * O(log n); only the transactions of the partial days at both ends of the range are read.
+     *
+     * @param startDate the start of the range, excluded, or null for no lower bound
+     * @param endDate   the end of the range, excluded, or null for no upper bound
+     * @return the sum of the amounts
+     * @throws IllegalArgumentException if the end date is before the start date
+     */
+    public Money sumBetween(LocalDateTime startDate, LocalDateTime endDate) {
+        return new Money(totalsBetween(startDate, endDate)[0]);
+    }
+
+    /**
+     * Returns the number of transactions dated after {@code startDate} and before {@code endDate}, in
+     * O(log n) like {@link #sumBetween(LocalDateTime, LocalDateTime)}.
+     *
+     * @param startDate the start of the range, excluded, or null for no lower bound
+     * @param endDate   the end of the range, excluded, or null for no upper bound
+     * @return the number of transactions
+     * @throws IllegalArgumentException if the end date is before the start date
+     */
+    public int countBetween(LocalDateTime startDate, LocalDateTime endDate) {
+        return (int) totalsBetween(startDate, endDate)[1];
+    }
+
+    /**
+     * Returns the totals of each day, month or year with transactions, from the period containing
+     * {@code from} to the period containing {@code to}. The totals are maintained as transactions are added,
+     * modified and removed, so this does not read any transaction: it costs O(log p + r), p being the number
+     * of periods of the budget and r the number of periods returned.
+     *
+     * @param period the kind of period
+     * @param from   a day of the first period to return, or null to start with the first period
+     * @param to     a day of the last period to return, or null to end with the last period
+     * @return the totals of the periods with transactions, in chronological order
+     * @throws IllegalArgumentException if {@code to} is before {@code from}
+     */
+    public List<PeriodTotal> getRollup(RollupPeriod period, LocalDate from, LocalDate to) {
+        if (from != null && to != null && to.isBefore(from)) {
+            throw new IllegalArgumentException("End date cannot be before start date");
+        }
+        long fromKey = from == null ? Long.MIN_VALUE : period.keyOfDay(from.toEpochDay());
+        long toKey = to == null ? Long.MAX_VALUE : period.keyOfDay(to.toEpochDay()) + 1;
+        long stamp = acquireRead();
+        try {
+            return rollups[period.ordinal()].totals(fromKey, toKey);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Returns the totals of the day, month or year containing a date.
+     *
+     * @param period the kind of period
+     * @param date   a day of the period
+     * @return the totals of the period, with a count of zero if it has no transactions
+     */
+    public PeriodTotal getPeriodTotal(RollupPeriod period, LocalDate date) {
+        List<PeriodTotal> totals = getRollup(period, date, date);
+        return totals.isEmpty()
+                ? new PeriodTotal(period, period.startOf(date), 0, Money.ZERO, Money.ZERO, Money.ZERO)
+                : totals.get(0);
+    }
+
+    /**
+     * Computes the sum and the count of a date range, with the same bounds as {@link #filterRows}.
+     *
+     * @return the sum of the amounts, in minor units, followed by the number of transactions
+     */
+    private long[] totalsBetween(LocalDateTime startDate, LocalDateTime endDate) {
+        validateFilter(null, startDate, endDate);
+        final long from = startDate == null ? Long.MIN_VALUE : ColumnStore.toEpochSecond(startDate) + 1;
+        final long to = endDate == null ? Long.MAX_VALUE
+                : ColumnStore.toEpochSecond(endDate) + (endDate.getNano() > 0 ? 1 : 0);
+        // Whole days within [from, to), answered by the per-day totals
+        final long firstDay = startDate == null ? Long.MIN_VALUE
+                : -Math.floorDiv(-from, RollupTable.SECONDS_PER_DAY);
+        final long endDay = endDate == null ? Long.MAX_VALUE : Math.floorDiv(to, RollupTable.SECONDS_PER_DAY);
+        long[] totals = new long[2];
+        long stamp = acquireRead();
+        try {
+            if (firstDay < endDay) {
+                RollupTable days = rollups[RollupPeriod.DAY.ordinal()];
+                totals[0] = days.sum(firstDay, endDay);
+                totals[1] = days.count(firstDay, endDay);
+                if (startDate != null) {
+                    addRowsBetween(from, firstDay * RollupTable.SECONDS_PER_DAY, totals);
+                }
+                if (endDate != null) {
+                    addRowsBetween(endDay * RollupTable.SECONDS_PER_DAY, to, totals);
+                }
+            } else {
+                addRowsBetween(from, to, totals);
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        return totals;
+    }
+
+    /**
+     * Adds the amount and the count of the live rows dated in {@code [fromSecond, toSecond)} to the totals.
+     */
+    private void addRowsBetween(long fromSecond, long toSecond, long[] totals) {
+        int end = timeIndex.lowerBound(toSecond);
+        for (int position = timeIndex.lowerBound(fromSecond); position < end; position++) {
+            int row = timeIndex.rowAt(position);
+            if (store.isLive(row)) {
+                totals[0] += store.amount(row);
+                totals[1]++;
+            }
+        }
+    }
+
+    private static boolean matchesDescription(int code, boolean[] matches) {
+        return code != DescriptionDictionary.NULL_CODE && matches[code];
     }
 
     public void removeAllTransactions() {
-        transactions.clear();
-        indices.clear();
+        BudgetEvent event;
+        long stamp = acquireWrite();
+        try {
+            store.clear();
+            timeIndex.clear();
+            amountIndex.clear();
+            idIndex.clear();
+            resetAggregates();
+            if (journal != null) {
+                journal.clear();
+            }
+            event = BudgetEvent.reloaded(this, ++version);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        fireBudgetChanged(event);
+    }
+
+    /**
+     * Registers a listener to be notified of every change to the transactions of this budget.
+     *
+     * @param listener the listener to add
+     */
+    public void addBudgetListener(BudgetListener listener) {
+        listeners.add(Objects.requireNonNull(listener, "Listener must not be null"));
+    }
+
+    public void removeBudgetListener(BudgetListener listener) {
+        listeners.remove(listener);
     }
 
     /**
@@ -151,10 +1004,47 @@ public class Budget implements Serializable {
      *
      * @return the total amount of all transactions in the budget
      */
-    public float getTotalAmount() {
-        return transactions
-                .stream().map(Transaction::getAmount)
-                .reduce(0f, Float::sum);
+    public Money getTotalAmount() {
+        long stamp = lock.tryOptimisticRead();
+        long currentTotal = total;
+        if (!lock.validate(stamp)) {
+            stamp = acquireRead();
+            try {
+                currentTotal = total;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return new Money(currentTotal);
+    }
+
+    /**
+     * Returns the aggregates of this budget: number of transactions, total, income, expense and extremes.
+     * They are maintained as transactions are added, modified and removed, so this is O(1), except right
+     * after the smallest or largest amount was removed, when the extremes are recomputed once.
+     *
+     * @return a snapshot of the aggregates
+     */
+    public BudgetSummary getSummary() {
+        long stamp = lock.tryOptimisticRead();
+        BudgetSummary summary = currentSummary();
+        if (lock.validate(stamp) && !extremesStale) {
+            return summary;
+        }
+        stamp = acquireWrite();
+        try {
+            if (extremesStale) {
+                recomputeExtremes();
+            }
+            return currentSummary();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private BudgetSummary currentSummary() {
+        return new BudgetSummary(store.liveCount(), new Money(total), new Money(income), new Money(expense),
+                new Money(min), new Money(max));
     }
 
     /**
@@ -163,13 +1053,14 @@ public class Budget implements Serializable {
      * @param id The id of the transaction to retrieve.
      * @return The transaction with the given id, or null if not found.
      */
-    public Transaction getTransactionById(int id) {
-        for (Transaction transaction : transactions) {
-            if (transaction.getId() == id) {
-                return transaction;
-            }
+    public Transaction getTransactionById(long id) {
+        long stamp = acquireRead();
+        try {
+            final int row = idIndex.get(id);
+            return row == -1 ? null : store.materialize(row);
+        } finally {
+            lock.unlockRead(stamp);
         }
-        return null;
     }
 
     /**
@@ -177,7 +1068,476 @@ public class Budget implements Serializable {
      *
      * @return A list of all transaction ids in the budget.
      */
-    public List<Integer> getTransactionIds() {
-        return transactions.stream().map(Transaction::getId).collect(Collectors.toList());
+    public List<Long> getTransactionIds() {
+        long stamp = acquireRead();
+        try {
+            List<Long> ids = new ArrayList<>(store.liveCount());
+            for (int row = 0; row < store.rowCount(); row++) {
+                if (store.isLive(row)) {
+                    ids.add(store.id(row));
+                }
+            }
+            return ids;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Appends a transaction to the store and the id index, assigning it an id if needed.
+     * The date index is left to the caller, which may insert the row or rebuild the whole index.
+     *
+     * @return the new row
+     */
+    private int appendRow(Transaction transaction) {
+        long id = transaction.getId();
+        if (id == Transaction.UNASSIGNED_ID || idIndex.get(id) != -1) {
+            id = idAllocator.next();
+        } else {
+            idAllocator.observe(id);
+        }
+        int row = store.append(id, ColumnStore.toEpochSecond(transaction.getTransactionDate()),
+                transaction.getAmount().minorUnits(), transaction.getDescription());
+        idIndex.putIfAbsent(id, row);
+        addToAggregates(row);
+        return row;
+    }
+
+    /**
+     * Adds a row to the aggregates, once its values are in the store.
+     */
+    private void addToAggregates(int row) {
+        long amount = store.amount(row);
+        long day = RollupTable.dayOf(store.epochSecond(row));
+        for (RollupTable rollup : rollups) {
+            rollup.add(day, amount);
+        }
+        total += amount;
+        if (amount > 0) {
+            income += amount;
+        } else {
+            expense += amount;
+        }
+        if (store.liveCount() == 1) {
+            min = amount;
+            max = amount;
+        } else {
+            min = Math.min(min, amount);
+            max = Math.max(max, amount);
+        }
+    }
+
+    /**
+     * Removes a row from the aggregates, while it is still live and holds its current values.
+     */
+    private void removeFromAggregates(int row) {
+        long amount = store.amount(row);
+        long day = RollupTable.dayOf(store.epochSecond(row));
+        for (RollupTable rollup : rollups) {
+            rollup.remove(day, amount);
+        }
+        total -= amount;
+        if (amount > 0) {
+            income -= amount;
+        } else {
+            expense -= amount;
+        }
+        if (amount == min || amount == max) {
+            extremesStale = true;
+        }
+    }
+
+    private void resetAggregates() {
+        for (RollupTable rollup : rollups) {
+            rollup.clear();
+        }
+        total = 0;
+        income = 0;
+        expense = 0;
+        min = 0;
+        max = 0;
+        extremesStale = false;
+    }
+
+    private void recomputeExtremes() {
+        BudgetSummary summary = store.summarize();
+        min = summary.min().minorUnits();
+        max = summary.max().minorUnits();
+        extremesStale = false;
+    }
+
+    /**
+     * Recomputes all the aggregates from the live rows of the store.
+     */
+    private void recomputeAggregates() {
+        BudgetSummary summary = store.summarize();
+        total = summary.total().minorUnits();
+        income = summary.income().minorUnits();
+        expense = summary.expense().minorUnits();
+        min = summary.min().minorUnits();
+        max = summary.max().minorUnits();
+        extremesStale = false;
+    }
+
+    /**
+     * Rebuilds every index from the content of the store, which must not contain deleted rows.
+     * <p>
+     * The indexes only read the store, so above {@value #PARALLEL_REBUILD_THRESHOLD} rows each of them, each
+     * rollup table and the aggregates are rebuilt by their own task, in the current {@link ForkJoinPool} or the
+     * common one, and the large sorts are split further by {@link SortedRowIndex#rebuild(int)}.
+     */
+    private void rebuildIndexes() {
+        int count = store.rowCount();
+        if (count < PARALLEL_REBUILD_THRESHOLD) {
+            timeIndex.rebuild(count);
+            amountIndex.rebuild(count);
+            idIndex.clear();
+            for (RollupTable rollup : rollups) {
+                rollup.clear();
+            }
+            for (int row = 0; row < count; row++) {
+                idIndex.putIfAbsent(store.id(row), row);
+                long day = RollupTable.dayOf(store.epochSecond(row));
+                for (RollupTable rollup : rollups) {
+                    rollup.add(day, store.amount(row));
+                }
+            }
+            recomputeAggregates();
+            return;
+        }
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        tasks.add(ForkJoinTask.adapt(() -> timeIndex.rebuild(count)));
+        tasks.add(ForkJoinTask.adapt(() -> amountIndex.rebuild(count)));
+        tasks.add(ForkJoinTask.adapt(() -> {
+            idIndex.clear();
+            idIndex.ensureCapacity(count);
+            for (int row = 0; row < count; row++) {
+                idIndex.putIfAbsent(store.id(row), row);
+            }
+        }));
+        for (RollupTable rollup : rollups) {
+            tasks.add(ForkJoinTask.adapt(() -> {
+                rollup.clear();
+                for (int row = 0; row < count; row++) {
+                    rollup.add(RollupTable.dayOf(store.epochSecond(row)), store.amount(row));
+                }
+            }));
+        }
+        tasks.add(ForkJoinTask.adapt(this::recomputeAggregates));
+        ForkJoinTask.invokeAll(tasks);
+    }
+
+    /**
+     * Looks up the position of an id through the id index, which is only possible while the snapshot is
+     * the current version of this budget.
+     *
+     * @param snapshot a snapshot of this budget
+     * @param id       the id to look up
+     * @return the position of the id in the snapshot, -1 if it is not there, or empty if the snapshot is stale
+     */
+    OptionalInt indexedPosition(BudgetSnapshot snapshot, long id) {
+        long stamp = acquireRead();
+        try {
+            if (snapshot.getVersion() != version) {
+                return OptionalInt.empty();
+            }
+            int row = idIndex.get(id);
+            return OptionalInt.of(row == -1 ? -1 : store.positionOf(row));
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private void fireBudgetChanged(BudgetEvent event) {
+        for (BudgetListener listener : listeners) {
+            listener.budgetChanged(event);
+        }
+    }
+
+    private long acquireWrite() {
+        waitingWriters.incrementAndGet();
+        try {
+            return lock.writeLock();
+        } finally {
+            waitingWriters.decrementAndGet();
+        }
+    }
+
+    /**
+     * Acquires the read lock. A {@link StampedLock} lets new readers overtake a waiting writer, so a steady
+     * flow of overlapping reads would starve the writers; while a writer is waiting, the reader queues for
+     * the write lock behind it instead, and downgrades it to a read lock once acquired.
+     *
+     * @return the stamp of the read lock
+     */
+    private long acquireRead() {
+        if (waitingWriters.get() == 0) {
+            return lock.readLock();
+        }
+        return lock.tryConvertToReadLock(lock.writeLock());
+    }
+
+    private void scheduleCompactionIfNeeded() {
+        if (!compactionScheduled && store.deadCount() >= MIN_DEAD_ROWS_TO_COMPACT
+                && store.deadCount() >= store.rowCount() * DEAD_ROW_RATIO_TO_COMPACT) {
+            compactionScheduled = true;
+            COMPACTION_EXECUTOR.execute(this::compact);
+        }
+    }
+
+    /**
+     * Drops the deleted rows from the store and the indexes. Positions of the live rows are unchanged.
+     * <p>
+     * The live rows are copied into a new store from a frozen copy of the rows, without holding the lock, so
+     * that the budget can be read and changed meanwhile. The write lock is only taken to freeze the rows and
+     * copy the date and amount indexes, one array copy each, and at the end to apply the changes made in
+     * between to the new store and swap it in, which costs as much as making these changes again.
+     */
+    private void compact() {
+        ColumnStore source;
+        ColumnStore.Snapshot rows;
+        ColumnStore compacted;
+        SortedRowIndex newTimeIndex;
+        SortedRowIndex newAmountIndex;
+        long stamp = acquireWrite();
+        try {
+            compactionScheduled = false;
+            if (store.deadCount() == 0) {
+                return;
+            }
+            source = store;
+            rows = store.startCompaction();
+            compacted = store.emptyCopy();
+            // Copying an index is a single array copy; sorting the compacted rows again would cost far more
+            newTimeIndex = timeIndex.copy(compacted::epochSecond);
+            newAmountIndex = amountIndex.copy(compacted::amount);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+        int[] newRows = new int[rows.rowCount()];
+        compacted.appendLive(rows, newRows);
+        newTimeIndex.compact(newRows);
+        newAmountIndex.compact(newRows);
+        IdIndex newIdIndex = new IdIndex();
+        newIdIndex.ensureCapacity(compacted.rowCount());
+        for (int row = 0; row < compacted.rowCount(); row++) {
+            newIdIndex.putIfAbsent(compacted.id(row), row);
+        }
+
+        stamp = acquireWrite();
+        try {
+            // The store was replaced or cleared meanwhile, which left no deleted row to drop
+            if (store != source) {
+                return;
+            }
+            int[] changedRows = store.finishCompaction();
+            if (changedRows == null) {
+                return;
+            }
+            for (int row : changedRows) {
+                if (row >= newRows.length) {
+                    // Added meanwhile, copied below
+                    continue;
+                }
+                int newRow = newRows[row];
+                if (newRow == -1 || !compacted.isLive(newRow)) {
+                    // Deleted before the rows were frozen, or its deletion was already replayed
+                    continue;
+                }
+                newTimeIndex.remove(newRow);
+                newAmountIndex.remove(newRow);
+                if (store.isLive(row)) {
+                    compacted.set(newRow, store.epochSecond(row), store.amount(row), store.description(row));
+                    newTimeIndex.insert(newRow);
+                    newAmountIndex.insert(newRow);
+                } else {
+                    newIdIndex.remove(compacted.id(newRow));
+                    compacted.kill(newRow);
+                }
+            }
+            // Rows added meanwhile, the deleted ones left out
+            int firstAdded = compacted.rowCount();
+            for (int row = rows.rowCount(); row < store.rowCount(); row++) {
+                if (store.isLive(row)) {
+                    int newRow = compacted.append(store.id(row), store.epochSecond(row), store.amount(row),
+                            store.description(row));
+                    newIdIndex.putIfAbsent(store.id(row), newRow);
+                }
+            }
+            newTimeIndex.insertAll(firstAdded, compacted.rowCount());
+            newAmountIndex.insertAll(firstAdded, compacted.rowCount());
+            store = compacted;
+            timeIndex = newTimeIndex;
+            amountIndex = newAmountIndex;
+            idIndex = newIdIndex;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Writes the live rows of the current snapshot, so that saving never blocks, nor is blocked by, changes
+     * made concurrently to the budget.
+     */
+    @Serial
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ColumnStore.Snapshot rows = snapshot().rows();
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("transactions", null);
+        out.writeFields();
+        out.writeObject(rows.idColumn());
+        out.writeObject(rows.epochSecondColumn());
+        out.writeObject(rows.amountColumn());
+        // Descriptions are saved once in a dictionary, followed by the code of each row
+        int[] descriptionCodes = rows.descriptionCodeColumn();
+        out.writeObject(DescriptionDictionary.renumber(descriptionCodes, rows.descriptions()));
+        out.writeObject(descriptionCodes);
+        out.writeObject(idAllocator);
+    }
+
+    @Serial
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        initStorage(new ColumnStore());
+        List<Transaction> legacyTransactions = (List<Transaction>) fields.get("transactions", null);
+        if (legacyTransactions != null) {
+            setTransactions(legacyTransactions);
+        } else {
+            long[] ids = (long[]) in.readObject();
+            long[] epochSeconds = (long[]) in.readObject();
+            long[] amounts = toMinorUnits(in.readObject());
+            String[] descriptions = (String[]) in.readObject();
+            Object next = in.readObject();
+            // Budgets saved before descriptions were dictionary-encoded have one description per row
+            if (next instanceof int[] descriptionCodes) {
+                descriptions = DescriptionDictionary.decode(descriptionCodes, descriptions);
+                next = in.readObject();
+            }
+            store.load(ids, epochSeconds, amounts, descriptions);
+            idAllocator = (IdAllocator) next;
+            rebuildIndexes();
+        }
+    }
+
+    /**
+     * Creates a budget from the columns of a file read by {@link BudgetFile}.
+     *
+     * @param ids          the ids of the transactions
+     * @param epochSeconds their dates, as returned by {@link ColumnStore#toEpochSecond(LocalDateTime)}
+     * @param amounts      their amounts, in minor units
+     * @param descriptions their descriptions
+     * @param idAllocator  the allocator of the ids, which must have observed every id
+     * @return the budget
+     */
+    static Budget fromColumns(long[] ids, long[] epochSeconds, long[] amounts, String[] descriptions,
+                              IdAllocator idAllocator) {
+        Budget budget = new Budget();
+        budget.store.load(ids, epochSeconds, amounts, descriptions);
+        budget.idAllocator = idAllocator;
+        budget.rebuildIndexes();
+        return budget;
+    }
+
+    /**
+     * Replaces the transactions of this budget with those of a budget built in the background, such as by
+     * {@link LazyBudgetFile#loadInto(Budget)}, by taking over its store and indexes instead of copying them, so
+     * the write lock is only held for an instant. The other budget must not be used afterwards.
+     *
+     * @param loaded the budget whose transactions to take
+     */
+    void replaceWith(Budget loaded) {
+        BudgetEvent event;
+        long stamp = acquireWrite();
+        try {
+            store = loaded.store;
+            timeIndex = loaded.timeIndex;
+            amountIndex = loaded.amountIndex;
+            idIndex = loaded.idIndex;
+            rollups = loaded.rollups;
+            idAllocator = loaded.idAllocator;
+            total = loaded.total;
+            income = loaded.income;
+            expense = loaded.expense;
+            min = loaded.min;
+            max = loaded.max;
+            extremesStale = loaded.extremesStale;
+            if (journal != null) {
+                journal.clear();
+                journalRows(0, store.rowCount());
+            }
+            event = BudgetEvent.reloaded(this, ++version);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        fireBudgetChanged(event);
+    }
+
+    /**
+     * Records the rows {@code from} to {@code to - 1} in the journal, if there is one.
+     */
+    private void journalRows(int from, int to) {
+        if (journal != null) {
+            for (int row = from; row < to; row++) {
+                journal.put(store.id(row), store.epochSecond(row), store.amount(row), store.description(row));
+            }
+        }
+    }
+
+    /**
+     * Attaches the journal that records the changes of this budget from now on, replacing the previous one.
+     *
+     * @param journal the journal, or null to stop recording
+     */
+    void setJournal(BudgetJournal journal) {
+        long stamp = acquireWrite();
+        try {
+            this.journal = journal;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Returns a snapshot of the current version and, under the same lock, seals the journal, so that the sealed
+     * records are exactly the changes the snapshot includes since the previous checkpoint.
+     *
+     * @return the snapshot to save as the checkpoint
+     */
+    BudgetSnapshot checkpoint() {
+        long stamp = acquireWrite();
+        try {
+            if (snapshot == null || snapshot.getVersion() != version) {
+                snapshot = new BudgetSnapshot(this, version, store.snapshot());
+            }
+            if (journal != null) {
+                journal.seal();
+            }
+            return snapshot;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Returns the allocator of the ids of this budget, saved with it by {@link BudgetFile}.
+     */
+    IdAllocator idAllocator() {
+        return idAllocator;
+    }
+
+    /**
+     * Reads the amount column, which budgets saved before amounts became {@link Money} stored as floats.
+     */
+    private static long[] toMinorUnits(Object column) {
+        if (column instanceof float[] floats) {
+            long[] amounts = new long[floats.length];
+            for (int i = 0; i < floats.length; i++) {
+                amounts[i] = Money.ofFloat(floats[i]).minorUnits();
+            }
+            return amounts;
+        }
+        return (long[]) column;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,120 @@
+package model;
+
+import java.io.Serial;
+import java.util.EventObject;
+
+/**
+ * Describes a change made to the transactions of a {@link Budget}, in terms of the positions of the rows
+ * in {@link Budget#getTransactions()}, so that a view can update only the rows that changed.
+ * <ul>
+ *     <li>{@link Type#INSERTED}: rows were inserted; the positions are those of the new rows after the change.</li>
+ *     <li>{@link Type#DELETED}: rows were deleted; the positions are those of the deleted rows before the
+ *     change.</li>
+ *     <li>{@link Type#UPDATED}: rows were modified in place; their positions did not change.</li>
+ *     <li>{@link Type#RELOADED}: all the transactions were replaced, there are no positions.</li>
+ * </ul>
+ * Positions are sorted in ascending order.
+ *
+ * @author Alessandro Catenacci
+ */
+public class BudgetEvent extends EventObject {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private static final int[] NO_POSITIONS = new int[0];
+
+    /**
+     * The kind of change.
+     */
+    public enum Type {
+        INSERTED,
+        DELETED,
+        UPDATED,
+        RELOADED
+    }
+
+    private final Type type;
+    private final int[] positions;
+    private final long version;
+
+    /**
+     * Creates an event.
+     *
+     * @param budget    the budget that changed
+     * @param type      the kind of change
+     * @param positions the sorted positions of the rows that changed, owned by the event from now on
+     * @param version   the version of the budget after the change
+     */
+    BudgetEvent(Budget budget, Type type, int[] positions, long version) {
+        super(budget);
+        this.type = type;
+        this.positions = positions;
+        this.version = version;
+    }
+
+    static BudgetEvent reloaded(Budget budget, long version) {
+        return new BudgetEvent(budget, Type.RELOADED, NO_POSITIONS, version);
+    }
+
+    static BudgetEvent single(Budget budget, Type type, int position, long version) {
+        return new BudgetEvent(budget, type, new int[]{position}, version);
+    }
+
+    public Budget getBudget() {
+        return (Budget) getSource();
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns the version of the budget right after this change.
+     *
+     * @return the version, as returned by {@link Budget#getVersion()}
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public int getPositionCount() {
+        return positions.length;
+    }
+
+    /**
+     * Returns the sorted positions of the rows that changed.
+     *
+     * @return a copy of the positions
+     */
+    public int[] getPositions() {
+        return positions.clone();
+    }
+
+    /**
+     * Groups the positions into runs of consecutive positions, which is how table views report changes.
+     *
+     * @return the runs, each as a {@code {first, last}} pair, in ascending order
+     */
+    public int[][] getRanges() {
+        int runs = 0;
+        for (int i = 0; i < positions.length; i++) {
+            if (i == 0 || positions[i] != positions[i - 1] + 1) {
+                runs++;
+            }
+        }
+        int[][] ranges = new int[runs][];
+        for (int i = 0, run = 0; i < positions.length; i++) {
+            if (i == 0 || positions[i] != positions[i - 1] + 1) {
+                ranges[run++] = new int[]{positions[i], positions[i]};
+            } else {
+                ranges[run - 1][1] = positions[i];
+            }
+        }
+        return ranges;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[type=" + type + ", rows=" + positions.length + ", version=" + version + "]";
+    }
+}
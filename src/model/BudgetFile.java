@@ -0,0 +1,693 @@
+package model;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.apache.commons.compress.compressors.deflate.DeflateCompressorInputStream;
+import org.apache.commons.compress.compressors.deflate.DeflateCompressorOutputStream;
+import org.apache.commons.compress.compressors.deflate.DeflateParameters;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+import java.util.zip.Deflater;
+
+/**
+ * Saves and loads budgets as {@code .bma} files.
+ * <p>
+ * Budgets are saved in a versioned binary format, read and written through NIO buffers:
+ * <ul>
+ *     <li>a header: the magic bytes {@code 0x89 'B' 'M' 'A'}, the format version and flags, as two
+ *     little-endian shorts, the flags holding the {@link Compression} of the file;</li>
+ *     <li>a metadata section: the number of rows, the number of rows per block, the size of the description
+ *     dictionary, the state of the {@link IdAllocator} and the generation of the file, which ties an autosave
+ *     checkpoint to the groups of its {@link BudgetJournal} and is zero otherwise;</li>
+ *     <li>a dictionary section: each distinct description once, as UTF-8;</li>
+ *     <li>row blocks of {@value #BLOCK_ROWS} rows, column after column: ids and dates as differences from the
+ *     previous row, amounts, and description codes, all as variable-length integers;</li>
+ *     <li>an offset table section: the number of blocks and the position of each block in the file;</li>
+ *     <li>a trailer: the position of the offset table, as a little-endian long.</li>
+ * </ul>
+ * Each section is stored as its length, its content and the CRC32C of its content, so that a damaged file is
+ * reported instead of loaded with wrong rows. Blocks are encoded on their own, without reference to the
+ * previous block. Ids are mostly increasing and dates change little from one row to the next, so a row takes
+ * about 8 bytes instead of the 28 bytes of the columns and far less than a serialized {@link Transaction}.
+ * The offset table lets {@link LazyBudgetFile} map the file and decode any block without reading the ones
+ * before it. Files of version 2, which have no offset table, and of version 3, which are not compressed, are still
+ * read.
+ * <p>
+ * The dictionary and the blocks may be compressed, each on its own, so that the blocks can still be decoded in
+ * any order. Their checksum is then that of the compressed bytes, so that a damaged block is reported by its
+ * section before anything is decompressed.
+ * <p>
+ * Files saved by previous versions, which serialized the whole {@link Budget}, are recognized by their
+ * stream header and still read, with deserialization limited to the classes a budget is made of.
+ *
+ * @author Alessandro Catenacci
+ */
+public final class BudgetFile {
+    /**
+     * Current version of the format.
+     */
+    public static final int VERSION = 4;
+    /** First version of the binary format, without the offset table. */
+    private static final int FIRST_VERSION = 2;
+
+    private static final byte[] MAGIC = {(byte) 0x89, 'B', 'M', 'A'};
+    static final int HEADER_SIZE = MAGIC.length + 2 * Short.BYTES;
+    /** Index of the section of the first block, after the metadata and the dictionary. */
+    static final int FIRST_BLOCK_SECTION = 2;
+    /** Size of the trailer, which holds the position of the offset table. */
+    static final int TRAILER_SIZE = Long.BYTES;
+    /** First bytes of a Java serialization stream, i.e. of a file saved by a previous version. */
+    private static final short STREAM_MAGIC = ObjectStreamConstants.STREAM_MAGIC;
+    /**
+     * Number of rows of a block.
+     */
+    static final int BLOCK_ROWS = 16 * ColumnStore.SEGMENT_SIZE;
+    /** Bits of the header flags holding the compression of the file. */
+    private static final int COMPRESSION_MASK = 0xF;
+    /** Size above which the output buffer is written to the file. */
+    private static final int FLUSH_SIZE = 1 << 20;
+    /** Classes that may be read from a serialized budget. */
+    private static final ObjectInputFilter LEGACY_FILTER = ObjectInputFilter.Config.createFilter(
+            "maxdepth=20;model.*;java.lang.*;java.util.*;java.util.concurrent.atomic.AtomicLong;java.time.*;"
+                    + "java.math.*;!*");
+
+    private BudgetFile() {
+    }
+
+    /**
+     * Saves a budget to a file, replacing it if it exists. The rows are read from a {@link Budget#snapshot()},
+     * so the budget can be edited while it is being saved. The budget is written to a temporary file next to
+     * the target, which is only replaced once the new content is on disk.
+     *
+     * @param budget the budget to save
+     * @param file   the path of the file
+     * @throws IOException if the file cannot be written
+     */
+    public static void save(Budget budget, Path file) throws IOException {
+        save(budget.snapshot(), file, Compression.NONE, 0, Progress.NONE);
+    }
+
+    /**
+     * Saves a budget to a file like {@link #save(Budget, Path)}, reporting the blocks written to a progress.
+     * If the save fails or is cancelled, the file is left as it was.
+     *
+     * @param budget   the budget to save
+     * @param file     the path of the file
+     * @param progress the progress to report to
+     * @throws IOException                                 if the file cannot be written
+     * @throws java.util.concurrent.CancellationException if the progress has been cancelled
+     */
+    public static void save(Budget budget, Path file, Progress progress) throws IOException {
+        save(budget.snapshot(), file, Compression.NONE, 0, progress);
+    }
+
+    /**
+     * Saves a budget to a file like {@link #save(Budget, Path, Progress)}, compressing its dictionary and its
+     * blocks.
+     *
+     * @param budget      the budget to save
+     * @param file        the path of the file
+     * @param compression the compression of the dictionary and the blocks
+     * @param progress    the progress to report to
+     * @throws IOException                                 if the file cannot be written
+     * @throws java.util.concurrent.CancellationException if the progress has been cancelled
+     */
+    public static void save(Budget budget, Path file, Compression compression, Progress progress)
+            throws IOException {
+        save(budget.snapshot(), file, compression, 0, progress);
+    }
+
+    /**
+     * Saves a snapshot of a budget to a file, replacing it if it exists.
+     *
+     * @param snapshot    the snapshot to save
+     * @param file        the path of the file
+     * @param compression the compression of the dictionary and the blocks
+     * @param generation  the generation of the file, read back in {@link Columns#generation()}
+     * @throws IOException if the file cannot be written
+     */
+    static void save(BudgetSnapshot snapshot, Path file, Compression compression, long generation)
+            throws IOException {
+        save(snapshot, file, compression, generation, Progress.NONE);
+    }
+
+    private static void save(BudgetSnapshot snapshot, Path file, Compression compression, long generation,
+                             Progress progress) throws IOException {
+        ColumnStore.Snapshot rows = snapshot.rows();
+        long[] ids = rows.idColumn();
+        long[] epochSeconds = rows.epochSecondColumn();
+        long[] amounts = rows.amountColumn();
+        int[] descriptionCodes = rows.descriptionCodeColumn();
+        String[] dictionary = DescriptionDictionary.renumber(descriptionCodes, rows.descriptions());
+        // Read after the snapshot: the allocator only moves forward, so it covers every saved id
+        IdAllocator idAllocator = snapshot.budget().idAllocator();
+
+        progress.start(ids.length);
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            write(temp, ids, epochSeconds, amounts, descriptionCodes, dictionary, idAllocator, compression,
+                    generation, progress);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void write(Path temp, long[] ids, long[] epochSeconds, long[] amounts, int[] descriptionCodes,
+                              String[] dictionary, IdAllocator idAllocator, Compression compression,
+                              long generation, Progress progress) throws IOException {
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Output out = new Output(channel);
+            out.header(compression);
+
+            out.beginSection();
+            out.putVarLong(ids.length);
+            out.putVarLong(BLOCK_ROWS);
+            out.putVarLong(dictionary.length);
+            out.putVarLong(idAllocator.getEpoch());
+            out.putVarLong(idAllocator.lastSequence());
+            out.putVarLong(generation);
+            out.endSection();
+
+            out.beginSection();
+            for (String description : dictionary) {
+                byte[] bytes = description.getBytes(StandardCharsets.UTF_8);
+                out.putVarLong(bytes.length);
+                out.put(bytes);
+            }
+            out.compressSection(compression);
+            out.endSection();
+
+            long[] blockOffsets = new long[blockCount(ids.length, BLOCK_ROWS)];
+            for (int from = 0, block = 0; from < ids.length; from += BLOCK_ROWS, block++) {
+                progress.checkCancelled();
+                int to = Math.min(ids.length, from + BLOCK_ROWS);
+                blockOffsets[block] = out.position();
+                out.beginSection();
+                out.putVarLong(to - from);
+                putDeltas(out, ids, from, to);
+                putDeltas(out, epochSeconds, from, to);
+                for (int row = from; row < to; row++) {
+                    out.putVarLong(zigZag(amounts[row]));
+                }
+                for (int row = from; row < to; row++) {
+                    out.putVarLong(descriptionCodes[row] + 1L);
+                }
+                out.compressSection(compression);
+                out.endSection();
+                progress.advance(to - from, out.position() - blockOffsets[block]);
+            }
+
+            long tableOffset = out.position();
+            out.beginSection();
+            out.putVarLong(blockOffsets.length);
+            long previous = 0;
+            for (long offset : blockOffsets) {
+                out.putVarLong(offset - previous);
+                previous = offset;
+            }
+            out.endSection();
+            out.putLong(tableOffset);
+            out.flush();
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Loads a budget from a file saved by {@link #save(Budget, Path)} or by a previous version of the
+     * application.
+     *
+     * @param file the path of the file
+     * @return the budget
+     * @throws IOException if the file cannot be read, is damaged or is not a budget
+     */
+    public static Budget load(Path file) throws IOException {
+        ByteBuffer buffer = read(file);
+        try {
+            if (isSerialized(buffer)) {
+                return loadSerialized(buffer);
+            }
+            return decode(buffer).toBudget();
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Damaged budget file", e);
+        }
+    }
+
+    /**
+     * Reads the columns of a budget file without building the budget, for {@link BudgetJournal} to replay
+     * changes over them.
+     *
+     * @param file the path of the file
+     * @return the columns of the file
+     * @throws IOException if the file cannot be read, is damaged or is not a budget
+     */
+    static Columns loadColumns(Path file) throws IOException {
+        ByteBuffer buffer = read(file);
+        try {
+            if (isSerialized(buffer)) {
+                return Columns.of(loadSerialized(buffer));
+            }
+            return decode(buffer);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Damaged budget file", e);
+        }
+    }
+
+    private static ByteBuffer read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Budget file too large: " + size + " bytes");
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new EOFException("Budget file truncated");
+                }
+            }
+            return buffer.flip();
+        }
+    }
+
+    static boolean isSerialized(ByteBuffer buffer) {
+        return buffer.remaining() >= 2
+                && (short) ((buffer.get(0) & 0xFF) << 8 | buffer.get(1) & 0xFF) == STREAM_MAGIC;
+    }
+
+    private static Columns decode(ByteBuffer buffer) throws IOException {
+        Compression compression = readHeader(buffer).compression();
+        Metadata metadata = Metadata.read(section(buffer, 0));
+        String[] dictionary = readDictionary(section(buffer, 1, compression), metadata.dictionarySize());
+
+        int rowCount = metadata.rowCount();
+        long[] ids = new long[rowCount];
+        long[] epochSeconds = new long[rowCount];
+        long[] amounts = new long[rowCount];
+        String[] descriptions = new String[rowCount];
+        for (int from = 0, block = 0; from < rowCount; from += metadata.blockRows(), block++) {
+            decodeBlock(section(buffer, FIRST_BLOCK_SECTION + block, compression), block, metadata, dictionary,
+                    from, ids, epochSeconds, amounts, descriptions);
+        }
+        // The offset table and the trailer are only needed to read the blocks out of order
+        return new Columns(ids, epochSeconds, amounts, descriptions, metadata.idAllocator(), metadata.generation());
+    }
+
+    /**
+     * Checks the header of a file and returns its version and compression.
+     */
+    static Header readHeader(ByteBuffer buffer) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        if (buffer.remaining() < HEADER_SIZE) {
+            throw new IOException("Not a budget file");
+        }
+        buffer.get(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not a budget file");
+        }
+        int version = buffer.getShort();
+        int flags = buffer.getShort();
+        if (version < FIRST_VERSION || version > VERSION) {
+            throw new IOException("Unsupported budget file version " + version);
+        }
+        if ((flags & ~COMPRESSION_MASK) != 0) {
+            throw new IOException("Unsupported budget file flags " + flags);
+        }
+        return new Header(version, Compression.of(flags & COMPRESSION_MASK));
+    }
+
+    static String[] readDictionary(ByteBuffer section, int size) {
+        String[] dictionary = new String[size];
+        for (int code = 0; code < size; code++) {
+            byte[] bytes = new byte[toCount(getVarLong(section))];
+            section.get(bytes);
+            dictionary[code] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return dictionary;
+    }
+
+    /**
+     * Decodes the rows of a block into the columns, starting at index {@code from} of the columns.
+     *
+     * @return the number of rows of the block
+     */
+    static int decodeBlock(ByteBuffer rows, int block, Metadata metadata, String[] dictionary, int from,
+                           long[] ids, long[] epochSeconds, long[] amounts, String[] descriptions)
+            throws IOException {
+        int count = toCount(getVarLong(rows));
+        int to = from + count;
+        long first = (long) block * metadata.blockRows();
+        if (first + count > metadata.rowCount()
+                || (count != metadata.blockRows() && first + count != metadata.rowCount())) {
+            throw new IOException("Damaged budget file: wrong row count in section "
+                    + (FIRST_BLOCK_SECTION + block));
+        }
+        getDeltas(rows, ids, from, to);
+        getDeltas(rows, epochSeconds, from, to);
+        for (int row = from; row < to; row++) {
+            amounts[row] = unZigZag(getVarLong(rows));
+        }
+        for (int row = from; row < to; row++) {
+            int code = toCount(getVarLong(rows)) - 1;
+            descriptions[row] = code == DescriptionDictionary.NULL_CODE ? null : dictionary[code];
+        }
+        return count;
+    }
+
+    static int blockCount(int rowCount, int blockRows) {
+        return (int) ((rowCount + (long) blockRows - 1) / blockRows);
+    }
+
+    /**
+     * Reads a budget saved with Java serialization.
+     */
+    private static Budget loadSerialized(ByteBuffer buffer) throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(buffer.array(),
+                buffer.position(), buffer.remaining()))) {
+            in.setObjectInputFilter(LEGACY_FILTER);
+            if (in.readObject() instanceof Budget budget) {
+                return budget;
+            }
+            throw new IOException("Not a budget file");
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Not a budget file", e);
+        }
+    }
+
+    /**
+     * Returns the content of the next section, after checking its checksum.
+     */
+    static ByteBuffer section(ByteBuffer buffer, int index) throws IOException {
+        if (buffer.remaining() < Integer.BYTES) {
+            throw new EOFException("Budget file truncated before section " + index);
+        }
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining() - Integer.BYTES) {
+            throw new EOFException("Budget file truncated in section " + index);
+        }
+        ByteBuffer content = buffer.slice(buffer.position(), length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(buffer.position() + length);
+        CRC32C crc = new CRC32C();
+        crc.update(content.duplicate());
+        if ((int) crc.getValue() != buffer.getInt()) {
+            throw new IOException("Damaged budget file: checksum mismatch in section " + index);
+        }
+        return content;
+    }
+
+    /**
+     * Returns the content of the next section like {@link #section(ByteBuffer, int)}, decompressed.
+     */
+    static ByteBuffer section(ByteBuffer buffer, int index, Compression compression) throws IOException {
+        return decompress(section(buffer, index), index, compression);
+    }
+
+    /**
+     * Decompresses the content of a section, whose checksum has been checked.
+     */
+    static ByteBuffer decompress(ByteBuffer content, int index, Compression compression) throws IOException {
+        if (compression == Compression.NONE) {
+            return content;
+        }
+        int length = toCount(getVarLong(content));
+        byte[] packed = new byte[content.remaining()];
+        content.get(packed);
+        byte[] rows;
+        try (InputStream in = compression.decompress(new ByteArrayInputStream(packed))) {
+            rows = in.readNBytes(length);
+            if (rows.length != length || in.read() >= 0) {
+                throw new IOException("Damaged budget file: wrong length in section " + index);
+            }
+        } catch (IOException e) {
+            throw new IOException("Damaged budget file: cannot decompress section " + index, e);
+        }
+        return ByteBuffer.wrap(rows).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void putDeltas(Output out, long[] column, int from, int to) {
+        long previous = 0;
+        for (int row = from; row < to; row++) {
+            out.putVarLong(zigZag(column[row] - previous));
+            previous = column[row];
+        }
+    }
+
+    private static void getDeltas(ByteBuffer in, long[] column, int from, int to) {
+        long previous = 0;
+        for (int row = from; row < to; row++) {
+            previous += unZigZag(getVarLong(in));
+            column[row] = previous;
+        }
+    }
+
+    /**
+     * Maps signed values to unsigned ones so that small negative values also take few bytes.
+     */
+    static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Reads a variable-length integer: 7 bits per byte, least significant first, the high bit of each byte
+     * telling whether another byte follows.
+     */
+    static long getVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Variable-length integer too long");
+    }
+
+    static int toCount(long value) {
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Count out of range: " + value);
+        }
+        return (int) value;
+    }
+
+    /**
+     * How the dictionary and the blocks of a file are compressed, with the codecs of Commons Compress. The code
+     * of each is stored in the header flags, so it must never change.
+     */
+    public enum Compression {
+        /** Not compressed: the fastest to save and to load. */
+        NONE(0),
+        /** Deflate at its fastest level, with the zlib header and checksum. */
+        DEFLATE(1),
+        /** Bzip2 with its smallest blocks, which are still larger than a block of rows: smaller but slower. */
+        BZIP2(2);
+
+        private static final DeflateParameters DEFLATE_PARAMETERS = new DeflateParameters();
+
+        static {
+            DEFLATE_PARAMETERS.setCompressionLevel(Deflater.BEST_SPEED);
+        }
+
+        private final int code;
+
+        Compression(int code) {
+            this.code = code;
+        }
+
+        static Compression of(int code) throws IOException {
+            for (Compression compression : values()) {
+                if (compression.code == code) {
+                    return compression;
+                }
+            }
+            throw new IOException("Unsupported budget file compression " + code);
+        }
+
+        OutputStream compress(OutputStream out) throws IOException {
+            return switch (this) {
+                case NONE -> out;
+                case DEFLATE -> new DeflateCompressorOutputStream(out, DEFLATE_PARAMETERS);
+                case BZIP2 -> new BZip2CompressorOutputStream(out, BZip2CompressorOutputStream.MIN_BLOCKSIZE);
+            };
+        }
+
+        InputStream decompress(InputStream in) throws IOException {
+            return switch (this) {
+                case NONE -> in;
+                case DEFLATE -> new DeflateCompressorInputStream(in);
+                case BZIP2 -> new BZip2CompressorInputStream(in);
+            };
+        }
+    }
+
+    /**
+     * The content of the header of a file.
+     */
+    record Header(int version, Compression compression) {
+    }
+
+    /**
+     * The content of the metadata section of a file.
+     */
+    record Metadata(int rowCount, int blockRows, int dictionarySize, IdAllocator idAllocator, long generation) {
+        static Metadata read(ByteBuffer section) {
+            int rowCount = toCount(getVarLong(section));
+            int blockRows = toCount(getVarLong(section));
+            int dictionarySize = toCount(getVarLong(section));
+            IdAllocator idAllocator = new IdAllocator(toCount(getVarLong(section)));
+            idAllocator.observe(IdAllocator.compose(idAllocator.getEpoch(), getVarLong(section)));
+            // Files saved before the generation was added end here
+            long generation = section.hasRemaining() ? getVarLong(section) : 0;
+            if (blockRows <= 0) {
+                throw new IllegalArgumentException("Block size out of range: " + blockRows);
+            }
+            return new Metadata(rowCount, blockRows, dictionarySize, idAllocator, generation);
+        }
+    }
+
+    /**
+     * The rows of a budget file, column by column, with the allocator of their ids and the generation of the file.
+     */
+    record Columns(long[] ids, long[] epochSeconds, long[] amounts, String[] descriptions,
+                   IdAllocator idAllocator, long generation) {
+        /**
+         * Returns the columns of the live rows of a budget.
+         */
+        static Columns of(Budget budget) {
+            ColumnStore.Snapshot rows = budget.snapshot().rows();
+            return new Columns(rows.idColumn(), rows.epochSecondColumn(), rows.amountColumn(),
+                    DescriptionDictionary.decode(rows.descriptionCodeColumn(), rows.descriptions()),
+                    budget.idAllocator(), 0);
+        }
+
+        Budget toBudget() {
+            return Budget.fromColumns(ids, epochSeconds, amounts, descriptions, idAllocator);
+        }
+    }
+
+    /**
+     * Buffers the sections of a file before writing them to its channel.
+     */
+    private static final class Output {
+        private final FileChannel channel;
+        private ByteBuffer buffer = ByteBuffer.allocateDirect(2 * FLUSH_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private int sectionStart;
+        /** Number of bytes already written to the channel. */
+        private long written;
+
+        Output(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void header(Compression compression) {
+            buffer.put(MAGIC);
+            buffer.putShort((short) VERSION);
+            buffer.putShort((short) compression.code);
+        }
+
+        void beginSection() {
+            sectionStart = buffer.position();
+            ensure(Integer.BYTES);
+            buffer.putInt(0);
+        }
+
+        void endSection() throws IOException {
+            int length = buffer.position() - sectionStart - Integer.BYTES;
+            CRC32C crc = new CRC32C();
+            crc.update(buffer.slice(sectionStart + Integer.BYTES, length));
+            buffer.putInt(sectionStart, length);
+            ensure(Integer.BYTES);
+            buffer.putInt((int) crc.getValue());
+            if (buffer.position() >= FLUSH_SIZE) {
+                flush();
+            }
+        }
+
+        /**
+         * Replaces the content put since the beginning of the section with its length and its compressed bytes.
+         */
+        void compressSection(Compression compression) throws IOException {
+            if (compression == Compression.NONE) {
+                return;
+            }
+            int start = sectionStart + Integer.BYTES;
+            byte[] content = new byte[buffer.position() - start];
+            buffer.get(start, content);
+            ByteArrayOutputStream packed = new ByteArrayOutputStream(content.length / 2);
+            try (OutputStream out = compression.compress(packed)) {
+                out.write(content);
+            }
+            buffer.position(start);
+            putVarLong(content.length);
+            put(packed.toByteArray());
+        }
+
+        void putVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+
+        void put(byte[] bytes) {
+            ensure(bytes.length);
+            buffer.put(bytes);
+        }
+
+        void putLong(long value) {
+            ensure(Long.BYTES);
+            buffer.putLong(value);
+        }
+
+        /**
+         * Returns the position in the file of the next byte put.
+         */
+        long position() {
+            return written + buffer.position();
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                written += channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        /**
+         * Grows the buffer so that the current section can take {@code length} more bytes.
+         */
+        private void ensure(int length) {
+            if (buffer.remaining() < length) {
+                ByteBuffer larger = ByteBuffer.allocateDirect(Math.max(buffer.capacity() * 2,
+                        buffer.position() + length)).order(ByteOrder.LITTLE_ENDIAN);
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+        }
+    }
+}
@@ -0,0 +1,412 @@
+package model;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/**
+ * A write-ahead journal of the changes made to a {@link Budget} since its last checkpoint, so that the
+ * autosave writes what was edited rather than the whole budget.
+ * <p>
+ * The budget records each change while it holds its write lock: a PUT record holds the whole row of an added
+ * or modified transaction, a DELETE record its id, and a CLEAR record stands for the removal of all the
+ * transactions. Recording only appends to a buffer in memory. {@link #commit()} writes the buffered records
+ * to the file as one group, framed like the sections of a {@link BudgetFile} by its length and CRC32C, and
+ * forces it to disk, so that many edits share a single write and a single sync.
+ * <p>
+ * A checkpoint saves a snapshot of the budget with {@link BudgetFile} and then empties the journal. The budget
+ * seals the journal in {@link Budget#checkpoint()} while it takes the snapshot, so the sealed records are
+ * exactly the changes in the snapshot and the records that follow go to the emptied journal. Each checkpoint
+ * is saved with a new random generation, and each group starts with the generation of the checkpoint its
+ * records apply to. Recovering only replays the groups of the generation of the checkpoint on disk, so the
+ * groups left over by a crash between saving a checkpoint and emptying the journal, which belong to the
+ * checkpoint it replaced, possibly of another budget, are skipped. A torn group at the end of the file, left
+ * by a crash during a commit, is ignored.
+ * <p>
+ * The file is written through a {@link RandomAccessFile} rather than a {@code FileChannel}: interrupting the
+ * {@link AutoSaveScheduler} during a commit would close a channel and lose the journal.
+ *
+ * @author Alessandro Catenacci
+ */
+final class BudgetJournal implements AutoCloseable {
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final byte CLEAR = 3;
+    private static final int INITIAL_CAPACITY = 4096;
+    /** Room left at the start of each buffer for the length and the generation of its group. */
+    private static final int GROUP_HEADER = Integer.BYTES + Long.BYTES;
+
+    private final RandomAccessFile file;
+    /** Records not yet committed, guarded by this journal. */
+    private ByteBuffer pending = newBuffer(INITIAL_CAPACITY);
+    /** Records included in the checkpoint being saved, or null if no checkpoint is in progress. */
+    private ByteBuffer sealed;
+    /** Generation of the checkpoint the groups written now apply to, zero until the first one is saved. */
+    private long generation;
+
+    private BudgetJournal(RandomAccessFile file) {
+        this.file = file;
+    }
+
+    /**
+     * Creates an empty journal, replacing any existing file.
+     *
+     * @param file the path of the journal
+     * @return the journal
+     * @throws IOException if the file cannot be created
+     */
+    static BudgetJournal create(Path file) throws IOException {
+        RandomAccessFile journal = new RandomAccessFile(file.toFile(), "rw");
+        try {
+            journal.setLength(0);
+        } catch (IOException e) {
+            journal.close();
+            throw e;
+        }
+        return new BudgetJournal(journal);
+    }
+
+    /**
+     * Opens a journal, appending to the file if it exists. The records already in the file belong to the
+     * checkpoint already saved next to it, and are kept until {@link #checkpointed(long)} empties the file, so
+     * that this checkpoint and its changes can still be recovered until the new checkpoint is on disk. Nothing
+     * must be committed before then.
+     *
+     * @param file the path of the journal
+     * @return the journal
+     * @throws IOException if the file cannot be opened
+     */
+    static BudgetJournal open(Path file) throws IOException {
+        RandomAccessFile journal = new RandomAccessFile(file.toFile(), "rw");
+        try {
+            journal.seek(journal.length());
+        } catch (IOException e) {
+            journal.close();
+            throw e;
+        }
+        return new BudgetJournal(journal);
+    }
+
+    /**
+     * Records the current content of a row, added or modified.
+     */
+    synchronized void put(long id, long epochSecond, long amount, String description) {
+        byte[] bytes = description == null ? null : description.getBytes(StandardCharsets.UTF_8);
+        ensure(1 + 3 * 10 + 5 + (bytes == null ? 0 : bytes.length));
+        pending.put(PUT);
+        putVarLong(pending, id);
+        putVarLong(pending, BudgetFile.zigZag(epochSecond));
+        putVarLong(pending, BudgetFile.zigZag(amount));
+        if (bytes == null) {
+            putVarLong(pending, 0);
+        } else {
+            putVarLong(pending, bytes.length + 1L);
+            pending.put(bytes);
+        }
+    }
+
+    /**
+     * Records the deletion of a row.
+     */
+    synchronized void delete(long id) {
+        ensure(1 + 10);
+        pending.put(DELETE);
+        putVarLong(pending, id);
+    }
+
+    /**
+     * Records the removal of all the rows.
+     */
+    synchronized void clear() {
+        ensure(1);
+        pending.put(CLEAR);
+    }
+
+    /**
+     * Sets the records so far aside for the checkpoint being taken. Called by {@link Budget#checkpoint()} with
+     * the write lock of the budget held.
+     */
+    synchronized void seal() {
+        sealed = pending;
+        pending = newBuffer(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Empties the journal once the checkpoint holding the sealed records is on disk.
+     *
+     * @param generation the generation the checkpoint was saved with, which tags the groups written from now on
+     * @throws IOException if the file cannot be truncated
+     */
+    void checkpointed(long generation) throws IOException {
+        sealed = null;
+        this.generation = generation;
+        file.setLength(0);
+        file.seek(0);
+        file.getFD().sync();
+    }
+
+    /**
+     * Writes the sealed records as a normal group when the checkpoint could not be saved.
+     *
+     * @throws IOException if the records cannot be written
+     */
+    void checkpointFailed() throws IOException {
+        ByteBuffer records = sealed;
+        sealed = null;
+        if (records != null) {
+            write(records, true);
+        }
+    }
+
+    /**
+     * Drops the sealed records when the first checkpoint could not be saved: the file still holds the records of
+     * another checkpoint, and the next checkpoint includes the sealed records anyway.
+     */
+    void discardSealed() {
+        sealed = null;
+    }
+
+    /**
+     * Writes the pending records to the file as one group and forces them to disk. Does nothing if there is no
+     * pending record. The budget can keep recording changes while the group is written.
+     *
+     * @return the number of bytes written
+     * @throws IOException if the records cannot be written
+     */
+    int commit() throws IOException {
+        return commit(true);
+    }
+
+    /**
+     * Writes the pending records to the file as one group. Does nothing if there is no pending record.
+     *
+     * @param sync true to force the group to disk, false to leave it to a later {@link #sync()}
+     * @return the number of bytes written
+     * @throws IOException if the records cannot be written
+     */
+    int commit(boolean sync) throws IOException {
+        ByteBuffer records;
+        synchronized (this) {
+            if (pending.position() == GROUP_HEADER) {
+                return 0;
+            }
+            records = pending;
+            pending = newBuffer(Math.min(records.capacity(), 1 << 20));
+        }
+        return write(records, sync);
+    }
+
+    /**
+     * Forces the groups written so far to disk.
+     *
+     * @throws IOException if the file cannot be synced
+     */
+    void sync() throws IOException {
+        file.getFD().sync();
+    }
+
+    /**
+     * Returns the number of bytes recorded and not yet committed.
+     */
+    synchronized int pendingSize() {
+        return pending.position() - GROUP_HEADER;
+    }
+
+    /**
+     * Returns the size of the file.
+     */
+    long size() throws IOException {
+        return file.length();
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    /**
+     * Frames the records of a buffer as a group of the current generation, in place, and writes it with a single
+     * call.
+     */
+    private int write(ByteBuffer records, boolean sync) throws IOException {
+        records.putLong(Integer.BYTES, generation);
+        int length = records.position() - Integer.BYTES;
+        CRC32C crc = new CRC32C();
+        crc.update(records.array(), Integer.BYTES, length);
+        if (records.remaining() < Integer.BYTES) {
+            records = grow(records, Integer.BYTES);
+        }
+        records.putInt(0, length);
+        records.putInt((int) crc.getValue());
+        file.write(records.array(), 0, records.position());
+        if (sync) {
+            file.getFD().sync();
+        }
+        return records.position();
+    }
+
+    /**
+     * Loads a checkpoint and replays the groups of its generation in a journal over it.
+     *
+     * @param checkpoint the checkpoint, saved by {@link BudgetFile}
+     * @param journal    the journal, which may be missing
+     * @return the recovered budget
+     * @throws IOException if the checkpoint cannot be read
+     */
+    static Budget recover(Path checkpoint, Path journal) throws IOException {
+        if (!Files.exists(journal) || Files.size(journal) == 0) {
+            return BudgetFile.load(checkpoint);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(journal)).order(ByteOrder.LITTLE_ENDIAN);
+        return new Replay(BudgetFile.loadColumns(checkpoint)).apply(buffer);
+    }
+
+    private void ensure(int length) {
+        if (pending.remaining() < length) {
+            pending = grow(pending, length);
+        }
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer, int length) {
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + length))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.flip();
+        return larger.put(buffer);
+    }
+
+    private static ByteBuffer newBuffer(int capacity) {
+        return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN).position(GROUP_HEADER);
+    }
+
+    private static void putVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Applies the records of a journal to the columns of a checkpoint, then builds the budget once, so that
+     * replaying a large journal costs O(n) rather than one index update per record.
+     */
+    private static final class Replay {
+        private final IdIndex rows = new IdIndex();
+        private final long generation;
+        private final IdAllocator idAllocator;
+        private long[] ids;
+        private long[] epochSeconds;
+        private long[] amounts;
+        private String[] descriptions;
+        private boolean[] deleted;
+        private int size;
+
+        Replay(BudgetFile.Columns checkpoint) {
+            ids = checkpoint.ids();
+            epochSeconds = checkpoint.epochSeconds();
+            amounts = checkpoint.amounts();
+            descriptions = checkpoint.descriptions();
+            deleted = new boolean[ids.length];
+            size = ids.length;
+            rows.ensureCapacity(size);
+            for (int row = 0; row < size; row++) {
+                rows.putIfAbsent(ids[row], row);
+            }
+            idAllocator = checkpoint.idAllocator();
+            generation = checkpoint.generation();
+        }
+
+        Budget apply(ByteBuffer buffer) throws IOException {
+            for (int index = 0; buffer.hasRemaining(); index++) {
+                ByteBuffer group;
+                try {
+                    group = BudgetFile.section(buffer, index);
+                } catch (IOException e) {
+                    // Torn or partly written group: the crash happened while it was being committed
+                    break;
+                }
+                try {
+                    if (group.getLong() != generation) {
+                        // Written for the checkpoint this one replaced: the changes are in this checkpoint,
+                        // or were made to another budget
+                        continue;
+                    }
+                    applyGroup(group);
+                } catch (RuntimeException e) {
+                    throw new IOException("Damaged budget journal", e);
+                }
+            }
+            int count = 0;
+            for (int row = 0; row < size; row++) {
+                if (!deleted[row]) {
+                    ids[count] = ids[row];
+                    epochSeconds[count] = epochSeconds[row];
+                    amounts[count] = amounts[row];
+                    descriptions[count] = descriptions[row];
+                    count++;
+                }
+            }
+            return Budget.fromColumns(Arrays.copyOf(ids, count), Arrays.copyOf(epochSeconds, count),
+                    Arrays.copyOf(amounts, count), Arrays.copyOf(descriptions, count), idAllocator);
+        }
+
+        private void applyGroup(ByteBuffer group) {
+            while (group.hasRemaining()) {
+                byte type = group.get();
+                switch (type) {
+                    case PUT -> {
+                        long id = BudgetFile.getVarLong(group);
+                        long epochSecond = BudgetFile.unZigZag(BudgetFile.getVarLong(group));
+                        long amount = BudgetFile.unZigZag(BudgetFile.getVarLong(group));
+                        int length = BudgetFile.toCount(BudgetFile.getVarLong(group));
+                        String description = null;
+                        if (length > 0) {
+                            byte[] bytes = new byte[length - 1];
+                            group.get(bytes);
+                            description = new String(bytes, StandardCharsets.UTF_8);
+                        }
+                        put(id, epochSecond, amount, description);
+                    }
+                    case DELETE -> {
+                        int row = rows.remove(BudgetFile.getVarLong(group));
+                        if (row != -1) {
+                            deleted[row] = true;
+                        }
+                    }
+                    case CLEAR -> {
+                        rows.clear();
+                        Arrays.fill(deleted, 0, size, true);
+                    }
+                    default -> throw new IllegalArgumentException("Unknown journal record " + type);
+                }
+            }
+        }
+
+        private void put(long id, long epochSecond, long amount, String description) {
+            int row = rows.get(id);
+            if (row == -1) {
+                if (size == ids.length) {
+                    int capacity = Math.max(16, size * 2);
+                    ids = Arrays.copyOf(ids, capacity);
+                    epochSeconds = Arrays.copyOf(epochSeconds, capacity);
+                    amounts = Arrays.copyOf(amounts, capacity);
+                    descriptions = Arrays.copyOf(descriptions, capacity);
+                    deleted = Arrays.copyOf(deleted, capacity);
+                }
+                row = size++;
+                ids[row] = id;
+                rows.putIfAbsent(id, row);
+                idAllocator.observe(id);
+            }
+            epochSeconds[row] = epochSecond;
+            amounts[row] = amount;
+            descriptions[row] = description;
+        }
+    }
+}
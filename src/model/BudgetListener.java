@@ -0,0 +1,20 @@
+package model;
+
+import java.util.EventListener;
+
+/**
+ * A listener notified of every change made to the transactions of a {@link Budget}.
+ *
+ * @author Alessandro Catenacci
+ * @see Budget#addBudgetListener(BudgetListener)
+ */
+public interface BudgetListener extends EventListener {
+
+    /**
+     * Called after the transactions of the budget have changed. It is invoked on the thread that made the
+     * change, once the budget is unlocked, so it may read the budget.
+     *
+     * @param event the description of the change
+     */
+    void budgetChanged(BudgetEvent event);
+}
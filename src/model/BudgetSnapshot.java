@@ -0,0 +1,108 @@
+package model;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.OptionalInt;
+import java.util.RandomAccess;
+import java.util.function.Predicate;
+
+/**
+ * An immutable, read-only view of the transactions of a {@link Budget} at a given version, as returned by
+ * {@link Budget#snapshot()}.
+ * <p>
+ * The snapshot shares the storage segments of the budget instead of copying them; the budget copies a
+ * segment before changing it, so the content of a snapshot never changes. It can be read from any thread
+ * without locking, while the budget keeps being modified. Each call to {@link #get(int)} creates a new
+ * {@link Transaction} holding a copy of the row.
+ *
+ * @author Alessandro Catenacci
+ */
+public final class BudgetSnapshot extends AbstractList<Transaction> implements RandomAccess {
+    private final Budget budget;
+    private final long version;
+    private final ColumnStore.Snapshot rows;
+
+    BudgetSnapshot(Budget budget, long version, ColumnStore.Snapshot rows) {
+        this.budget = budget;
+        this.version = version;
+        this.rows = rows;
+    }
+
+    /**
+     * Returns the version of the budget this snapshot was taken at.
+     *
+     * @return the version, as returned by {@link Budget#getVersion()}
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public Transaction get(int index) {
+        Objects.checkIndex(index, rows.liveCount());
+        return rows.materialize(rows.rowAt(index));
+    }
+
+    @Override
+    public int size() {
+        return rows.liveCount();
+    }
+
+    /**
+     * Finds the position of a transaction by its id. While the snapshot is the current version of the
+     * budget, the id index of the budget is used; otherwise the id column is scanned, without creating any
+     * transaction.
+     */
+    @Override
+    public int indexOf(Object o) {
+        if (!(o instanceof Transaction transaction) || transaction.getId() == Transaction.UNASSIGNED_ID) {
+            return -1;
+        }
+        OptionalInt position = budget.indexedPosition(this, transaction.getId());
+        return position.isPresent() ? position.getAsInt() : rows.positionOfId(transaction.getId());
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        // Ids are unique within a budget
+        return indexOf(o);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) != -1;
+    }
+
+    /**
+     * Returns the positions of the transactions accepted by the given filter, in ascending order.
+     *
+     * @param filter the filter to apply to every transaction
+     * @return the sorted positions
+     */
+    int[] positionsMatching(Predicate<? super Transaction> filter) {
+        int[] positions = new int[16];
+        int count = 0;
+        for (int row = 0, position = 0; row < rows.rowCount(); row++) {
+            if (!rows.isLive(row)) {
+                continue;
+            }
+            if (filter.test(rows.materialize(row))) {
+                if (count == positions.length) {
+                    positions = Arrays.copyOf(positions, count * 2);
+                }
+                positions[count++] = position;
+            }
+            position++;
+        }
+        return Arrays.copyOf(positions, count);
+    }
+
+    Budget budget() {
+        return budget;
+    }
+
+    ColumnStore.Snapshot rows() {
+        return rows;
+    }
+}
@@ -0,0 +1,16 @@
+package model;
+
+/**
+ * An immutable snapshot of the aggregates of a {@link Budget}, as returned by {@link Budget#getSummary()}.
+ *
+ * @param count   the number of transactions
+ * @param total   the sum of all amounts
+ * @param income  the sum of the positive amounts
+ * @param expense the sum of the negative amounts, which is zero or negative
+ * @param min     the smallest amount, or 0 if there are no transactions
+ * @param max     the largest amount, or 0 if there are no transactions
+ *
+ * @author Alessandro Catenacci
+ */
+public record BudgetSummary(int count, Money total, Money income, Money expense, Money min, Money max) {
+}
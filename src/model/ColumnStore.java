@@ -0,0 +1,770 @@
+package model;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Columnar storage for the rows of a {@link Budget}.
+ * <p>
+ * Every attribute of a transaction lives in its own parallel array, so a row costs a handful of
+ * primitive slots instead of a {@link Transaction} object graph. Dates are kept as epoch seconds
+ * (UTC-based, no zone conversion is involved) and rebuilt into {@link LocalDateTime} only when a
+ * row is materialized. Descriptions are dictionary-encoded: each row holds the {@code int} code of its
+ * description in a {@link DescriptionDictionary} shared by all rows.
+ * <p>
+ * The rows are split into fixed-size {@link Segment}s of {@link #SEGMENT_SIZE} rows, each holding its own
+ * columns. {@link #snapshot()} freezes the current segments and returns a {@link Snapshot} sharing them;
+ * a frozen segment is never written again, the store copies it the first time one of its rows changes.
+ * A snapshot therefore costs O(n / {@value #SEGMENT_SIZE}) and a write after a snapshot copies at most
+ * one segment.
+ * <p>
+ * Deleting a row only clears its bit in the live-row bitmap of its segment (a tombstone), so row numbers
+ * stay stable and deletes are cheap. The <em>position</em> of a row, i.e. its index among the live rows,
+ * is found with a {@link FenwickTree} over the live count of each segment, in O(log n) both ways.
+ * A compaction eventually copies the live rows into a new store with {@link #appendLive(Snapshot, int[])},
+ * renumbering them.
+ * <p>
+ * Segments are created by a {@link SegmentFactory}. By default their columns are heap arrays
+ * ({@link HeapSegment}); a {@link MappedSegmentFile} keeps them in a memory-mapped file instead.
+ *
+ * @author Alessandro Catenacci
+ */
+final class ColumnStore {
+    static final int SEGMENT_SHIFT = 10;
+    /**
+     * Number of rows of a segment.
+     */
+    static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+    private static final int INITIAL_SEGMENTS = 4;
+
+    private Segment[] segments;
+    private int segmentCount;
+    private final FenwickTree liveCounts;
+    private int size;
+    private int deadCount;
+    private DescriptionDictionary dictionary;
+    private final SegmentFactory segmentFactory;
+    /**
+     * Generation of the writable segments. It is incremented by every snapshot, which freezes the segments
+     * of the previous generations.
+     */
+    private int generation;
+    /**
+     * Rows set or killed since {@link #startCompaction()}, possibly more than once, or null if no compaction is
+     * in progress.
+     */
+    private int[] changedRows;
+    private int changedCount;
+
+    /**
+     * Creates an empty store keeping its rows on the heap.
+     */
+    ColumnStore() {
+        this(HeapSegment::new);
+    }
+
+    /**
+     * Creates an empty store.
+     *
+     * @param segmentFactory creates the segments holding the rows
+     */
+    ColumnStore(SegmentFactory segmentFactory) {
+        this.segmentFactory = segmentFactory;
+        segments = new Segment[INITIAL_SEGMENTS];
+        liveCounts = new FenwickTree();
+        dictionary = new DescriptionDictionary();
+    }
+
+    /**
+     * Returns the number of rows in the store, including deleted rows that were not compacted yet.
+     */
+    int rowCount() {
+        return size;
+    }
+
+    /**
+     * Returns the number of live rows.
+     */
+    int liveCount() {
+        return size - deadCount;
+    }
+
+    int deadCount() {
+        return deadCount;
+    }
+
+    boolean isLive(int row) {
+        return segments[row >>> SEGMENT_SHIFT].isLive(row & SEGMENT_MASK);
+    }
+
+    /**
+     * Appends a live row to the store.
+     *
+     * @param id          the transaction id
+     * @param epochSecond the transaction date, as returned by {@link #toEpochSecond(LocalDateTime)}
+     * @param amount      the transaction amount, in minor units
+     * @param description the transaction description
+     * @return the index of the new row
+     */
+    int append(long id, long epochSecond, long amount, String description) {
+        int index = size >>> SEGMENT_SHIFT;
+        if (index == segmentCount) {
+            addSegment(segmentFactory.create(generation));
+            liveCounts.append(0);
+        }
+        Segment segment = writable(index);
+        int offset = size & SEGMENT_MASK;
+        segment.set(offset, id, epochSecond, amount, dictionary.acquire(description));
+        segment.setLive(offset);
+        liveCounts.add(index, 1);
+        return size++;
+    }
+
+    /**
+     * Overwrites the mutable attributes of a row.
+     *
+     * @param row         the row to update
+     * @param epochSecond the new transaction date
+     * @param amount      the new amount, in minor units
+     * @param description the new description
+     */
+    void set(int row, long epochSecond, long amount, String description) {
+        Segment segment = writable(row >>> SEGMENT_SHIFT);
+        int offset = row & SEGMENT_MASK;
+        dictionary.release(segment.descriptionCode(offset));
+        segment.set(offset, segment.id(offset), epochSecond, amount, dictionary.acquire(description));
+        recordChange(row);
+    }
+
+    /**
+     * Marks a live row as deleted. Its values stay in the columns until the next compaction.
+     *
+     * @param row the row to delete
+     */
+    void kill(int row) {
+        int index = row >>> SEGMENT_SHIFT;
+        Segment segment = writable(index);
+        int offset = row & SEGMENT_MASK;
+        segment.liveBits[offset >>> 6] &= ~(1L << offset);
+        segment.liveCount--;
+        dictionary.release(segment.descriptionCode(offset));
+        segment.set(offset, segment.id(offset), segment.epochSecond(offset), segment.amount(offset),
+                DescriptionDictionary.NULL_CODE);
+        liveCounts.add(index, -1);
+        deadCount++;
+        recordChange(row);
+    }
+
+    /**
+     * Returns the row holding the live row at the given position.
+     *
+     * @param position the index of the row among the live rows
+     * @return the row number
+     */
+    int rowAt(int position) {
+        if (deadCount == 0) {
+            return position;
+        }
+        int index = liveCounts.search(position);
+        int rank = (int) (position - liveCounts.prefixSum(index));
+        return (index << SEGMENT_SHIFT) + segments[index].select(rank);
+    }
+
+    /**
+     * Returns the position of a live row, i.e. the number of live rows before it.
+     *
+     * @param row the row number
+     * @return the index of the row among the live rows
+     */
+    int positionOf(int row) {
+        if (deadCount == 0) {
+            return row;
+        }
+        int index = row >>> SEGMENT_SHIFT;
+        return (int) liveCounts.prefixSum(index) + segments[index].rank(row & SEGMENT_MASK);
+    }
+
+    /**
+     * Freezes the current rows for a compaction, like {@link #snapshot()}, and records the rows set or killed
+     * from now on, so that the compaction can run without the lock of the budget and apply these changes
+     * once it is done.
+     *
+     * @return the rows to copy into the compacted store with {@link #appendLive(Snapshot, int[])}
+     */
+    Snapshot startCompaction() {
+        changedRows = new int[16];
+        changedCount = 0;
+        return snapshot();
+    }
+
+    /**
+     * Creates an empty store whose segments are created like the ones of this store.
+     */
+    ColumnStore emptyCopy() {
+        return new ColumnStore(segmentFactory);
+    }
+
+    /**
+     * Appends the live rows of a snapshot of another store, keeping their order, so that this store only holds
+     * the descriptions still in use. The snapshot can be read while the other store is being written.
+     *
+     * @param rows    the snapshot returned by {@link #startCompaction()}
+     * @param newRows receives the row number in this store of every row of the snapshot, or -1 for deleted rows
+     */
+    void appendLive(Snapshot rows, int[] newRows) {
+        for (int row = 0; row < rows.rowCount; row++) {
+            Segment segment = rows.segments[row >>> SEGMENT_SHIFT];
+            int offset = row & SEGMENT_MASK;
+            if (!segment.isLive(offset)) {
+                newRows[row] = -1;
+                continue;
+            }
+            int code = segment.descriptionCode(offset);
+            newRows[row] = append(segment.id(offset), segment.epochSecond(offset), segment.amount(offset),
+                    code == DescriptionDictionary.NULL_CODE ? null : rows.descriptions[code]);
+        }
+    }
+
+    /**
+     * Stops recording the changed rows.
+     *
+     * @return the rows set or killed since {@link #startCompaction()}, or null if the store was cleared since,
+     * which leaves nothing to compact
+     */
+    int[] finishCompaction() {
+        int[] changed = changedRows == null ? null : Arrays.copyOf(changedRows, changedCount);
+        changedRows = null;
+        return changed;
+    }
+
+    private void recordChange(int row) {
+        if (changedRows != null) {
+            if (changedCount == changedRows.length) {
+                changedRows = Arrays.copyOf(changedRows, changedCount * 2);
+            }
+            changedRows[changedCount++] = row;
+        }
+    }
+
+    /**
+     * Removes all rows.
+     */
+    void clear() {
+        reset();
+    }
+
+    private void reset() {
+        segments = new Segment[INITIAL_SEGMENTS];
+        segmentCount = 0;
+        liveCounts.clear();
+        size = 0;
+        deadCount = 0;
+        dictionary = new DescriptionDictionary();
+        changedRows = null;
+    }
+
+    /**
+     * Freezes the current rows and returns a read-only view of them. Later changes to the store do not
+     * affect the snapshot, which can be read from any thread without synchronization.
+     *
+     * @return the snapshot
+     */
+    Snapshot snapshot() {
+        generation++;
+        int[] firstPositions = new int[segmentCount + 1];
+        for (int index = 0; index < segmentCount; index++) {
+            firstPositions[index + 1] = firstPositions[index] + segments[index].liveCount;
+        }
+        return new Snapshot(Arrays.copyOf(segments, segmentCount), firstPositions, size, deadCount == 0,
+                dictionary.values());
+    }
+
+    long id(int row) {
+        return segments[row >>> SEGMENT_SHIFT].id(row & SEGMENT_MASK);
+    }
+
+    long epochSecond(int row) {
+        return segments[row >>> SEGMENT_SHIFT].epochSecond(row & SEGMENT_MASK);
+    }
+
+    long amount(int row) {
+        return segments[row >>> SEGMENT_SHIFT].amount(row & SEGMENT_MASK);
+    }
+
+    String description(int row) {
+        return dictionary.get(descriptionCode(row));
+    }
+
+    /**
+     * Returns the dictionary code of the description of a row, to be looked up in the array returned by
+     * {@link #descriptionsMatching(Predicate)}.
+     */
+    int descriptionCode(int row) {
+        return segments[row >>> SEGMENT_SHIFT].descriptionCode(row & SEGMENT_MASK);
+    }
+
+    /**
+     * Evaluates a filter on each distinct description in use rather than on each row.
+     *
+     * @param filter the filter to apply, never called for {@code null}
+     * @return an array telling, for each description code, whether its description is accepted
+     */
+    boolean[] descriptionsMatching(Predicate<String> filter) {
+        return dictionary.matching(filter);
+    }
+
+    /**
+     * Creates a {@link Transaction} holding a copy of the given row.
+     *
+     * @param row the row to materialize
+     * @return a new transaction with the values of the row
+     */
+    Transaction materialize(int row) {
+        return segments[row >>> SEGMENT_SHIFT].materialize(row & SEGMENT_MASK, dictionary.values());
+    }
+
+    /**
+     * Computes the aggregates of the live rows. Segments without deleted rows are aggregated column-wise
+     * by {@link AmountKernels}, the others row by row.
+     *
+     * @return the aggregates
+     */
+    BudgetSummary summarize() {
+        long total = 0;
+        long income = 0;
+        long expense = 0;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int index = 0; index < segmentCount; index++) {
+            Segment segment = segments[index];
+            int length = segmentLength(index);
+            long[] amounts = segment.amounts();
+            if (segment.liveCount == length) {
+                total += AmountKernels.sum(amounts, 0, length);
+                income += AmountKernels.sumPositive(amounts, 0, length);
+                expense += AmountKernels.sumNegative(amounts, 0, length);
+                min = Math.min(min, AmountKernels.min(amounts, 0, length));
+                max = Math.max(max, AmountKernels.max(amounts, 0, length));
+                continue;
+            }
+            for (int offset = 0; offset < length; offset++) {
+                if (segment.isLive(offset)) {
+                    long amount = amounts[offset];
+                    total += amount;
+                    if (amount > 0) {
+                        income += amount;
+                    } else {
+                        expense += amount;
+                    }
+                    min = Math.min(min, amount);
+                    max = Math.max(max, amount);
+                }
+            }
+        }
+        int count = liveCount();
+        return new BudgetSummary(count, new Money(total), new Money(income), new Money(expense),
+                new Money(count == 0 ? 0 : min), new Money(count == 0 ? 0 : max));
+    }
+
+    /**
+     * Replaces the content of the store with the given columns, which must all have the same length.
+     */
+    void load(long[] ids, long[] epochSeconds, long[] amounts, String[] descriptions) {
+        if (ids.length != epochSeconds.length || ids.length != amounts.length
+                || ids.length != descriptions.length) {
+            throw new IllegalArgumentException("Columns must have the same length");
+        }
+        reset();
+        for (int row = 0; row < ids.length; row++) {
+            append(ids[row], epochSeconds[row], amounts[row], descriptions[row]);
+        }
+    }
+
+    private int segmentLength(int index) {
+        return Math.min(SEGMENT_SIZE, size - (index << SEGMENT_SHIFT));
+    }
+
+    private void addSegment(Segment segment) {
+        if (segmentCount == segments.length) {
+            segments = Arrays.copyOf(segments, segmentCount * 2);
+        }
+        segments[segmentCount++] = segment;
+    }
+
+    /**
+     * Returns the segment at the given index, copying it first if it is frozen by a snapshot.
+     */
+    private Segment writable(int index) {
+        Segment segment = segments[index];
+        if (segment.generation != generation) {
+            segment = segment.copy(generation);
+            segments[index] = segment;
+        }
+        return segment;
+    }
+
+    /**
+     * Converts a date into the representation stored in the date column. Sub-second precision is dropped.
+     *
+     * @param dateTime the date to convert
+     * @return the number of seconds since 1970-01-01T00:00:00
+     */
+    static long toEpochSecond(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    /**
+     * Converts a value of the date column back into a date.
+     *
+     * @param epochSecond the number of seconds since 1970-01-01T00:00:00
+     * @return the corresponding date
+     */
+    static LocalDateTime toDateTime(long epochSecond) {
+        return LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC);
+    }
+
+    /**
+     * Creates the segments of a store.
+     */
+    interface SegmentFactory {
+        /**
+         * Creates an empty segment.
+         *
+         * @param generation the generation of the store, which only that generation may write to
+         * @return the new segment
+         */
+        Segment create(int generation);
+    }
+
+    /**
+     * The columns of {@link #SEGMENT_SIZE} consecutive rows, with their live-row bitmap. The live-row bitmap
+     * always lives on the heap; the columns are kept by the subclass.
+     */
+    abstract static class Segment {
+        /** Generation of the store that created this segment; only that generation may write to it. */
+        final int generation;
+        final long[] liveBits;
+        int liveCount;
+
+        Segment(int generation) {
+            this.generation = generation;
+            liveBits = new long[SEGMENT_SIZE >>> 6];
+        }
+
+        /**
+         * Creates a segment with the live rows of another one; the subclass copies the columns.
+         */
+        Segment(int generation, Segment source) {
+            this.generation = generation;
+            liveBits = source.liveBits.clone();
+            liveCount = source.liveCount;
+        }
+
+        abstract long id(int offset);
+
+        abstract long epochSecond(int offset);
+
+        /** Returns an amount in minor units, see {@link Money}. */
+        abstract long amount(int offset);
+
+        /** Returns the code of a description in the {@link DescriptionDictionary} of the store. */
+        abstract int descriptionCode(int offset);
+
+        /**
+         * Writes the columns of a row. The live-row bitmap is left unchanged.
+         */
+        abstract void set(int offset, long id, long epochSecond, long amount, int descriptionCode);
+
+        /**
+         * Returns the id column, of {@link #SEGMENT_SIZE} values. Like the other column accessors, it returns
+         * either the backing array, which must not be modified, or a copy.
+         */
+        abstract long[] ids();
+
+        abstract long[] epochSeconds();
+
+        abstract long[] amounts();
+
+        abstract int[] descriptionCodes();
+
+        /**
+         * Returns a writable copy of this segment for the given generation.
+         */
+        abstract Segment copy(int generation);
+
+        boolean isLive(int offset) {
+            return (liveBits[offset >>> 6] & (1L << offset)) != 0;
+        }
+
+        void setLive(int offset) {
+            liveBits[offset >>> 6] |= 1L << offset;
+            liveCount++;
+        }
+
+        /**
+         * Returns the offset of the live row of the given rank in this segment.
+         */
+        int select(int rank) {
+            int word = 0;
+            for (int count = Long.bitCount(liveBits[0]); rank >= count; count = Long.bitCount(liveBits[++word])) {
+                rank -= count;
+            }
+            long bits = liveBits[word];
+            for (int i = 0; i < rank; i++) {
+                bits &= bits - 1;
+            }
+            return (word << 6) + Long.numberOfTrailingZeros(bits);
+        }
+
+        /**
+         * Returns the number of live rows before the given offset.
+         */
+        int rank(int offset) {
+            int word = offset >>> 6;
+            int rank = Long.bitCount(liveBits[word] & ((1L << offset) - 1));
+            for (int i = 0; i < word; i++) {
+                rank += Long.bitCount(liveBits[i]);
+            }
+            return rank;
+        }
+
+        Transaction materialize(int offset, String[] descriptions) {
+            int code = descriptionCode(offset);
+            return new Transaction(id(offset), new Money(amount(offset)), toDateTime(epochSecond(offset)),
+                    code == DescriptionDictionary.NULL_CODE ? null : descriptions[code]);
+        }
+    }
+
+    /**
+     * A segment whose columns are heap arrays.
+     */
+    static final class HeapSegment extends Segment {
+        private final long[] ids;
+        private final long[] epochSeconds;
+        private final long[] amounts;
+        private final int[] descriptionCodes;
+
+        HeapSegment(int generation) {
+            super(generation);
+            ids = new long[SEGMENT_SIZE];
+            epochSeconds = new long[SEGMENT_SIZE];
+            amounts = new long[SEGMENT_SIZE];
+            descriptionCodes = new int[SEGMENT_SIZE];
+        }
+
+        private HeapSegment(int generation, HeapSegment source) {
+            super(generation, source);
+            ids = source.ids.clone();
+            epochSeconds = source.epochSeconds.clone();
+            amounts = source.amounts.clone();
+            descriptionCodes = source.descriptionCodes.clone();
+        }
+
+        @Override
+        long id(int offset) {
+            return ids[offset];
+        }
+
+        @Override
+        long epochSecond(int offset) {
+            return epochSeconds[offset];
+        }
+
+        @Override
+        long amount(int offset) {
+            return amounts[offset];
+        }
+
+        @Override
+        int descriptionCode(int offset) {
+            return descriptionCodes[offset];
+        }
+
+        @Override
+        void set(int offset, long id, long epochSecond, long amount, int descriptionCode) {
+            ids[offset] = id;
+            epochSeconds[offset] = epochSecond;
+            amounts[offset] = amount;
+            descriptionCodes[offset] = descriptionCode;
+        }
+
+        @Override
+        long[] ids() {
+            return ids;
+        }
+
+        @Override
+        long[] epochSeconds() {
+            return epochSeconds;
+        }
+
+        @Override
+        long[] amounts() {
+            return amounts;
+        }
+
+        @Override
+        int[] descriptionCodes() {
+            return descriptionCodes;
+        }
+
+        @Override
+        Segment copy(int generation) {
+            return new HeapSegment(generation, this);
+        }
+    }
+
+    /**
+     * An immutable view of the rows of a store, as returned by {@link #snapshot()}. Its segments are frozen,
+     * so it never changes and needs no locking.
+     */
+    static final class Snapshot {
+        private final Segment[] segments;
+        /** Position of the first live row of each segment, followed by the number of live rows. */
+        private final int[] firstPositions;
+        private final int rowCount;
+        /** Whether every row is live, in which case positions and rows are the same. */
+        private final boolean dense;
+        /** The descriptions indexed by code, shared with the dictionary of the store. */
+        private final String[] descriptions;
+
+        private Snapshot(Segment[] segments, int[] firstPositions, int rowCount, boolean dense,
+                         String[] descriptions) {
+            this.segments = segments;
+            this.firstPositions = firstPositions;
+            this.rowCount = rowCount;
+            this.dense = dense;
+            this.descriptions = descriptions;
+        }
+
+        int rowCount() {
+            return rowCount;
+        }
+
+        int liveCount() {
+            return firstPositions[segments.length];
+        }
+
+        boolean isLive(int row) {
+            return segments[row >>> SEGMENT_SHIFT].isLive(row & SEGMENT_MASK);
+        }
+
+        /**
+         * Returns the row holding the live row at the given position.
+         *
+         * @param position the index of the row among the live rows
+         * @return the row number
+         */
+        int rowAt(int position) {
+            if (dense) {
+                return position;
+            }
+            int index = Arrays.binarySearch(firstPositions, position);
+            if (index < 0) {
+                index = -index - 2;
+            }
+            // Skip segments without live rows, which share their first position with the next one
+            while (firstPositions[index + 1] <= position) {
+                index++;
+            }
+            return (index << SEGMENT_SHIFT) + segments[index].select(position - firstPositions[index]);
+        }
+
+        /**
+         * Returns the position of a live row, i.e. the number of live rows before it.
+         *
+         * @param row the row number
+         * @return the index of the row among the live rows
+         */
+        int positionOf(int row) {
+            if (dense) {
+                return row;
+            }
+            int index = row >>> SEGMENT_SHIFT;
+            return firstPositions[index] + segments[index].rank(row & SEGMENT_MASK);
+        }
+
+        /**
+         * Scans the id column for a live row with the given id.
+         *
+         * @param id the id to look for
+         * @return the position of the row, or -1 if there is none
+         */
+        int positionOfId(long id) {
+            for (int row = 0; row < rowCount; row++) {
+                if (id(row) == id && isLive(row)) {
+                    return positionOf(row);
+                }
+            }
+            return -1;
+        }
+
+        long id(int row) {
+            return segments[row >>> SEGMENT_SHIFT].id(row & SEGMENT_MASK);
+        }
+
+        /**
+         * Returns a copy of the ids of the live rows, used for serialization. Like the other column copies,
+         * it skips the deleted rows.
+         */
+        long[] idColumn() {
+            return (long[]) copyLive(Segment::ids, new long[liveCount()]);
+        }
+
+        long[] epochSecondColumn() {
+            return (long[]) copyLive(Segment::epochSeconds, new long[liveCount()]);
+        }
+
+        long[] amountColumn() {
+            return (long[]) copyLive(Segment::amounts, new long[liveCount()]);
+        }
+
+        /**
+         * Returns a copy of the description codes of the live rows; the codes index {@link #descriptions()}.
+         */
+        int[] descriptionCodeColumn() {
+            return (int[]) copyLive(Segment::descriptionCodes, new int[liveCount()]);
+        }
+
+        /**
+         * Returns the descriptions indexed by code. The array is shared and must not be modified.
+         */
+        String[] descriptions() {
+            return descriptions;
+        }
+
+        /**
+         * Copies a column of the live rows into the target array, one run of consecutive live rows at a time.
+         */
+        private Object copyLive(Function<Segment, Object> column, Object target) {
+            int position = 0;
+            for (int index = 0; index < segments.length; index++) {
+                Segment segment = segments[index];
+                Object source = column.apply(segment);
+                int length = Math.min(SEGMENT_SIZE, rowCount - (index << SEGMENT_SHIFT));
+                for (int offset = 0; offset < length; ) {
+                    if (!segment.isLive(offset)) {
+                        offset++;
+                        continue;
+                    }
+                    int end = offset + 1;
+                    while (end < length && segment.isLive(end)) {
+                        end++;
+                    }
+                    System.arraycopy(source, offset, target, position, end - offset);
+                    position += end - offset;
+                    offset = end;
+                }
+            }
+            return target;
+        }
+
+        Transaction materialize(int row) {
+            return segments[row >>> SEGMENT_SHIFT].materialize(row & SEGMENT_MASK, descriptions);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * A pool of the distinct descriptions of a {@link ColumnStore}, which stores an {@code int} code per row
+ * instead of a {@link String}.
+ * <p>
+ * Budgets repeat the same few descriptions over many rows, so each distinct description is kept once and
+ * every row holding it shares the same instance. The pool is append-only: a code keeps its description
+ * until the whole dictionary is dropped, when the store is cleared or replaced by a compacted copy, so a
+ * {@link ColumnStore.Snapshot} can keep reading the array returned by {@link #values()} while new descriptions
+ * are added. The number of rows using each code is tracked, so that unused codes are left out when the rows
+ * are compacted or saved.
+ *
+ * @author Alessandro Catenacci
+ */
+final class DescriptionDictionary {
+    /**
+     * Code of a {@code null} description.
+     */
+    static final int NULL_CODE = -1;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final Map<String, Integer> codes = new HashMap<>();
+    private String[] values = new String[INITIAL_CAPACITY];
+    /** Number of rows holding each code. */
+    private int[] counts = new int[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * Returns the number of codes, including the ones no row uses anymore.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the code of a description for a new row, adding the description to the pool if needed.
+     *
+     * @param description the description, may be null
+     * @return its code
+     */
+    int acquire(String description) {
+        if (description == null) {
+            return NULL_CODE;
+        }
+        Integer code = codes.get(description);
+        if (code == null) {
+            if (size == values.length) {
+                // Snapshots keep the previous array, whose entries never change
+                values = Arrays.copyOf(values, size * 2);
+                counts = Arrays.copyOf(counts, size * 2);
+            }
+            code = size++;
+            values[code] = description;
+            codes.put(description, code);
+        }
+        counts[code]++;
+        return code;
+    }
+
+    /**
+     * Records that a row no longer holds the given code.
+     *
+     * @param code the code of the row
+     */
+    void release(int code) {
+        if (code != NULL_CODE) {
+            counts[code]--;
+        }
+    }
+
+    String get(int code) {
+        return code == NULL_CODE ? null : values[code];
+    }
+
+    /**
+     * Returns the descriptions indexed by code. The array is shared, not copied; its entries below
+     * {@link #size()} never change.
+     */
+    String[] values() {
+        return values;
+    }
+
+    /**
+     * Evaluates a filter once per distinct description in use, so that rows can be filtered by code.
+     *
+     * @param filter the filter to apply to the descriptions; it is not called for {@code null}
+     * @return an array telling, for each code, whether its description is accepted
+     */
+    boolean[] matching(Predicate<String> filter) {
+        boolean[] matches = new boolean[size];
+        for (int code = 0; code < size; code++) {
+            matches[code] = counts[code] > 0 && filter.test(values[code]);
+        }
+        return matches;
+    }
+
+    /**
+     * Tells whether a text contains a lower-case needle, ignoring case, without allocating.
+     *
+     * @param text   the text to search
+     * @param needle the text to look for, in lower case
+     * @return true if the text contains the needle
+     */
+    static boolean containsIgnoreCase(String text, String needle) {
+        for (int start = 0, last = text.length() - needle.length(); start <= last; start++) {
+            if (text.regionMatches(true, start, needle, 0, needle.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Renumbers a column of codes in place so that only the codes it uses remain, numbered in order of first
+     * use, and returns the matching dictionary. This is how a column is saved.
+     *
+     * @param codes  the column of codes, renumbered in place
+     * @param values the descriptions indexed by the original codes
+     * @return the descriptions indexed by the new codes
+     */
+    static String[] renumber(int[] codes, String[] values) {
+        int[] newCodes = new int[values.length];
+        Arrays.fill(newCodes, NULL_CODE);
+        String[] used = new String[INITIAL_CAPACITY];
+        int usedCount = 0;
+        for (int i = 0; i < codes.length; i++) {
+            int code = codes[i];
+            if (code == NULL_CODE) {
+                continue;
+            }
+            if (newCodes[code] == NULL_CODE) {
+                if (usedCount == used.length) {
+                    used = Arrays.copyOf(used, usedCount * 2);
+                }
+                used[usedCount] = values[code];
+                newCodes[code] = usedCount++;
+            }
+            codes[i] = newCodes[code];
+        }
+        return Arrays.copyOf(used, usedCount);
+    }
+
+    /**
+     * Decodes a column saved by {@link #renumber(int[], String[])}.
+     *
+     * @param codes  the column of codes
+     * @param values the descriptions indexed by code
+     * @return the descriptions of the rows, sharing the instances of {@code values}
+     */
+    static String[] decode(int[] codes, String[] values) {
+        String[] descriptions = new String[codes.length];
+        for (int i = 0; i < codes.length; i++) {
+            descriptions[i] = codes[i] == NULL_CODE ? null : values[codes[i]];
+        }
+        return descriptions;
+    }
+}
@@ -0,0 +1,116 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * A growable Fenwick tree (binary indexed tree) of {@code long} values.
+ * <p>
+ * It supports point updates, prefix sums and appends in O(log n), and finding the position where a
+ * running sum of non-negative values reaches a target, which is how the k-th live row of a
+ * {@link ColumnStore} is located.
+ *
+ * @author Alessandro Catenacci
+ */
+final class FenwickTree {
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** One-based tree: {@code tree[i]} holds the sum of the values in {@code (i - lowbit(i), i]}. */
+    private long[] tree;
+    private int size;
+
+    /**
+     * Creates an empty tree.
+     */
+    FenwickTree() {
+        tree = new long[INITIAL_CAPACITY + 1];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Appends a value after the last one.
+     *
+     * @param value the value to append
+     */
+    void append(long value) {
+        if (size + 1 == tree.length) {
+            tree = Arrays.copyOf(tree, tree.length + (tree.length >> 1));
+        }
+        int node = ++size;
+        // The new node covers (node - lowbit(node), node], i.e. the value plus a suffix of the existing ones
+        tree[node] = value + prefixSum(node - 1) - prefixSum(node - (node & -node));
+    }
+
+    /**
+     * Adds a delta to the value at the given index.
+     *
+     * @param index the zero-based index of the value
+     * @param delta the amount to add
+     */
+    void add(int index, long delta) {
+        for (int node = index + 1; node <= size; node += node & -node) {
+            tree[node] += delta;
+        }
+    }
+
+    /**
+     * Returns the sum of the first {@code count} values.
+     *
+     * @param count the number of values to sum, between 0 and {@link #size()}
+     * @return the sum of the values at indices 0 to {@code count - 1}
+     */
+    long prefixSum(int count) {
+        long sum = 0;
+        for (int node = count; node > 0; node -= node & -node) {
+            sum += tree[node];
+        }
+        return sum;
+    }
+
+    /**
+     * Finds the value that contains the given rank, assuming all values are non-negative.
+     *
+     * @param rank a zero-based rank lower than the total sum
+     * @return the index {@code i} such that {@code prefixSum(i) <= rank < prefixSum(i + 1)}
+     */
+    int search(long rank) {
+        int node = 0;
+        long remaining = rank;
+        for (int step = Integer.highestOneBit(size); step > 0; step >>= 1) {
+            int next = node + step;
+            if (next <= size && tree[next] <= remaining) {
+                node = next;
+                remaining -= tree[next];
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Replaces the content of the tree with the given values, in O(n).
+     *
+     * @param values the new values
+     * @param count  the number of values to use
+     */
+    void load(long[] values, int count) {
+        tree = new long[Math.max(INITIAL_CAPACITY, count) + 1];
+        size = count;
+        for (int node = 1; node <= count; node++) {
+            tree[node] += values[node - 1];
+            int parent = node + (node & -node);
+            if (parent <= count) {
+                tree[parent] += tree[node];
+            }
+        }
+    }
+
+    /**
+     * Removes all values.
+     */
+    void clear() {
+        Arrays.fill(tree, 0, size + 1, 0);
+        size = 0;
+    }
+}
@@ -0,0 +1,115 @@
+package model;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Allocates the ids of the transactions of a {@link Budget}.
+ * <p>
+ * An id is a 64-bit value made of a 16-bit epoch followed by a 48-bit sequence number. A budget allocates
+ * from a single epoch with a monotonic sequence, so its ids never collide; budgets that are meant to be
+ * merged can be given different epochs, in the spirit of Snowflake ids, and their ids stay unique across
+ * the merge. Allocation is a single atomic increment, so concurrent inserts never block each other.
+ * <p>
+ * The allocator is saved with the budget, so that ids are not reused after a reload.
+ *
+ * @author Alessandro Catenacci
+ */
+public final class IdAllocator implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Number of bits used by the sequence number.
+     */
+    public static final int SEQUENCE_BITS = 48;
+
+    /**
+     * Largest epoch an allocator can use.
+     */
+    public static final int MAX_EPOCH = (1 << (Long.SIZE - SEQUENCE_BITS)) - 1;
+
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private final int epoch;
+    /** Last sequence number handed out; ids start at sequence 1, so 0 is never a valid id. */
+    private final AtomicLong sequence;
+
+    /**
+     * Creates an allocator for epoch 0, the epoch of every new budget.
+     */
+    public IdAllocator() {
+        this(0);
+    }
+
+    /**
+     * Creates an allocator for the given epoch.
+     *
+     * @param epoch the epoch, between 0 and {@link #MAX_EPOCH}
+     * @throws IllegalArgumentException if the epoch is out of range
+     */
+    public IdAllocator(int epoch) {
+        if (epoch < 0 || epoch > MAX_EPOCH) {
+            throw new IllegalArgumentException("Epoch must be between 0 and " + MAX_EPOCH);
+        }
+        this.epoch = epoch;
+        this.sequence = new AtomicLong();
+    }
+
+    /**
+     * Returns a new id, never returned before by this allocator.
+     *
+     * @return the new id
+     * @throws IllegalStateException if the sequence of this epoch is exhausted
+     */
+    public long next() {
+        long next = sequence.incrementAndGet();
+        if (next > SEQUENCE_MASK) {
+            throw new IllegalStateException("Transaction id sequence exhausted for epoch " + epoch);
+        }
+        return compose(epoch, next);
+    }
+
+    /**
+     * Records an id that was assigned elsewhere, typically read from a file, so that it is never allocated.
+     * Ids from other epochs cannot collide with this allocator and are ignored.
+     *
+     * @param id an existing id
+     */
+    public void observe(long id) {
+        if (epochOf(id) == epoch) {
+            sequence.accumulateAndGet(sequenceOf(id), Math::max);
+        }
+    }
+
+    public int getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Returns the last sequence number handed out or observed, saved by {@link BudgetFile}.
+     */
+    long lastSequence() {
+        return sequence.get();
+    }
+
+    /**
+     * Builds an id from its parts.
+     *
+     * @param epoch    the epoch
+     * @param sequence the sequence number
+     * @return the id
+     */
+    public static long compose(int epoch, long sequence) {
+        return ((long) epoch << SEQUENCE_BITS) | (sequence & SEQUENCE_MASK);
+    }
+
+    public static int epochOf(long id) {
+        return (int) (id >>> SEQUENCE_BITS);
+    }
+
+    public static long sequenceOf(long id) {
+        return id & SEQUENCE_MASK;
+    }
+}
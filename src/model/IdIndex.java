@@ -0,0 +1,151 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * A hash index from transaction id to row number, used by {@link Budget} for O(1) lookups by id.
+ * <p>
+ * Keys and rows are kept in two parallel primitive arrays with open addressing and linear probing,
+ * so there is no boxing and no entry object per transaction. Removals use backward-shift deletion,
+ * which keeps probe sequences short without tombstones.
+ *
+ * @author Alessandro Catenacci
+ */
+final class IdIndex {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int EMPTY = -1;
+
+    private long[] keys;
+    /** Row of each slot, or {@link #EMPTY} for a free slot. */
+    private int[] rows;
+    private int size;
+    private int mask;
+
+    /**
+     * Creates an empty index.
+     */
+    IdIndex() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the row of the given id.
+     *
+     * @param id the id to look up
+     * @return the row, or -1 if the id is not indexed
+     */
+    int get(long id) {
+        for (int slot = slot(id); ; slot = (slot + 1) & mask) {
+            int row = rows[slot];
+            if (row == EMPTY || keys[slot] == id) {
+                return row;
+            }
+        }
+    }
+
+    /**
+     * Maps an id to a row, unless the id is already indexed.
+     *
+     * @param id  the id
+     * @param row the row holding it
+     * @return {@code true} if the mapping was added, {@code false} if the id was already present
+     */
+    boolean putIfAbsent(long id, int row) {
+        if ((size + 1) * 2 > rows.length) {
+            resize(rows.length * 2);
+        }
+        int slot = slot(id);
+        while (rows[slot] != EMPTY) {
+            if (keys[slot] == id) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = id;
+        rows[slot] = row;
+        size++;
+        return true;
+    }
+
+    /**
+     * Grows the table so that it can hold the given number of ids without resizing.
+     *
+     * @param expectedSize the number of ids the index will hold
+     */
+    void ensureCapacity(int expectedSize) {
+        int capacity = rows.length;
+        while (expectedSize * 2L > capacity) {
+            capacity *= 2;
+        }
+        if (capacity != rows.length) {
+            resize(capacity);
+        }
+    }
+
+    /**
+     * Removes an id from the index.
+     *
+     * @param id the id to remove
+     * @return the row it was mapped to, or -1 if it was not indexed
+     */
+    int remove(long id) {
+        int slot = slot(id);
+        while (rows[slot] != EMPTY && keys[slot] != id) {
+            slot = (slot + 1) & mask;
+        }
+        int removed = rows[slot];
+        if (removed == EMPTY) {
+            return -1;
+        }
+        // Move back any following entry whose probe sequence went through the freed slot
+        int free = slot;
+        for (int next = (free + 1) & mask; rows[next] != EMPTY; next = (next + 1) & mask) {
+            int home = slot(keys[next]);
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                keys[free] = keys[next];
+                rows[free] = rows[next];
+                free = next;
+            }
+        }
+        rows[free] = EMPTY;
+        size--;
+        return removed;
+    }
+
+    /**
+     * Removes all ids.
+     */
+    void clear() {
+        Arrays.fill(rows, EMPTY);
+        size = 0;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldRows = rows;
+        allocate(capacity);
+        for (int slot = 0; slot < oldRows.length; slot++) {
+            if (oldRows[slot] != EMPTY) {
+                putIfAbsent(oldKeys[slot], oldRows[slot]);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        rows = new int[capacity];
+        Arrays.fill(rows, EMPTY);
+        mask = capacity - 1;
+        size = 0;
+    }
+
+    private int slot(long id) {
+        // Fibonacci hashing spreads sequential ids over the table
+        int bits = Integer.numberOfTrailingZeros(rows.length);
+        return (int) ((id * 0x9E3779B97F4A7C15L) >>> (Long.SIZE - bits)) & mask;
+    }
+}
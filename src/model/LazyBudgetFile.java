@@ -0,0 +1,378 @@
+package model;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * A budget file opened without decoding its rows, so that a large budget can be shown as soon as it is opened.
+ * <p>
+ * Opening reads the header, the metadata, the dictionary and the offset table of a {@link BudgetFile}, which
+ * takes the same time whatever the number of rows. The rows are decoded a block at a time when
+ * {@link #transactions()} is read, from a memory mapping of the file, and the last blocks decoded are kept, so
+ * that scrolling a table decodes each block once. The file is mapped in chunks of whole blocks, since a single
+ * mapping cannot exceed 2 GiB. Compressed blocks are decompressed as they are decoded. {@link #loadInto(Budget)}
+ * then decodes all the rows, typically in the background, to give the budget its indexes: the blocks are
+ * decoded in parallel and the indexes rebuilt in parallel, in the current
+ * {@link java.util.concurrent.ForkJoinPool} or the common one.
+ * <p>
+ * Files of version 2 have no offset table: their blocks are found by skipping from one section to the next.
+ * Files saved with Java serialization cannot be read in parts and are loaded in full when opened.
+ *
+ * @author Alessandro Catenacci
+ */
+public final class LazyBudgetFile implements AutoCloseable {
+    private static final long MAX_CHUNK_SIZE = 1L << 30;
+    private static final int CACHED_BLOCKS = 8;
+
+    private final FileChannel channel;
+    private final BudgetFile.Compression compression;
+    private final BudgetFile.Metadata metadata;
+    private final String[] dictionary;
+    /** Position of the section of each block, followed by the end of the last one. */
+    private final long[] blockOffsets;
+    /** Chunk holding each block. */
+    private final int[] blockChunks;
+    /** Position of the first block of each chunk, followed by the end of the last one. */
+    private final long[] chunkOffsets;
+    private final MappedByteBuffer[] chunks;
+    /** Budget read from a serialized file, or null. */
+    private final Budget serialized;
+    private final List<Transaction> transactions;
+    /** Blocks decoded last, least recently used first; guarded by this file. */
+    private final Map<Integer, Block> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Block> eldest) {
+            return size() > CACHED_BLOCKS;
+        }
+    };
+
+    private LazyBudgetFile(FileChannel channel, BudgetFile.Compression compression, BudgetFile.Metadata metadata,
+                           String[] dictionary, long[] blockOffsets) {
+        this.channel = channel;
+        this.compression = compression;
+        this.metadata = metadata;
+        this.dictionary = dictionary;
+        this.blockOffsets = blockOffsets;
+        this.serialized = null;
+        this.transactions = new Rows();
+
+        int blockCount = blockOffsets.length - 1;
+        blockChunks = new int[blockCount];
+        long[] offsets = new long[blockCount + 1];
+        int chunkCount = 0;
+        for (int block = 0; block < blockCount; block++) {
+            if (chunkCount == 0 || blockOffsets[block + 1] - offsets[chunkCount - 1] > MAX_CHUNK_SIZE) {
+                offsets[chunkCount++] = blockOffsets[block];
+            }
+            blockChunks[block] = chunkCount - 1;
+        }
+        offsets[chunkCount] = blockOffsets[blockCount];
+        chunkOffsets = Arrays.copyOf(offsets, chunkCount + 1);
+        chunks = new MappedByteBuffer[chunkCount];
+    }
+
+    private LazyBudgetFile(Budget serialized) {
+        this.channel = null;
+        this.compression = null;
+        this.metadata = null;
+        this.dictionary = null;
+        this.blockOffsets = null;
+        this.blockChunks = null;
+        this.chunkOffsets = null;
+        this.chunks = null;
+        this.serialized = serialized;
+        this.transactions = serialized.snapshot();
+    }
+
+    /**
+     * Opens a budget file, reading only its header, metadata, dictionary and offset table.
+     *
+     * @param file the path of the file
+     * @return the opened file, to close once the rows are no longer read
+     * @throws IOException if the file cannot be read, is damaged or is not a budget
+     */
+    public static LazyBudgetFile open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            ByteBuffer header = read(channel, 0, (int) Math.min(size, BudgetFile.HEADER_SIZE));
+            if (BudgetFile.isSerialized(header)) {
+                channel.close();
+                return new LazyBudgetFile(BudgetFile.load(file));
+            }
+            BudgetFile.Header fileHeader = BudgetFile.readHeader(header);
+
+            long position = BudgetFile.HEADER_SIZE;
+            ByteBuffer section = readSection(channel, position, 0);
+            position += sectionSize(section);
+            BudgetFile.Metadata metadata = BudgetFile.Metadata.read(section);
+            section = readSection(channel, position, 1);
+            position += sectionSize(section);
+            section = BudgetFile.decompress(section, 1, fileHeader.compression());
+            String[] dictionary = BudgetFile.readDictionary(section, metadata.dictionarySize());
+
+            int blockCount = BudgetFile.blockCount(metadata.rowCount(), metadata.blockRows());
+            long[] blockOffsets = new long[blockCount + 1];
+            if (fileHeader.version() >= 3) {
+                readOffsetTable(channel, size, position, blockOffsets);
+            } else {
+                // No offset table: skip from the length of each block to the next
+                for (int block = 0; block < blockCount; block++) {
+                    blockOffsets[block] = position;
+                    int length = read(channel, position, Integer.BYTES).getInt();
+                    position += 2L * Integer.BYTES + length;
+                    if (length < 0 || position > size) {
+                        throw new EOFException("Budget file truncated in section "
+                                + (BudgetFile.FIRST_BLOCK_SECTION + block));
+                    }
+                }
+                blockOffsets[blockCount] = position;
+            }
+            return new LazyBudgetFile(channel, fileHeader.compression(), metadata, dictionary, blockOffsets);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            channel.close();
+            throw new IOException("Damaged budget file", e);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the offset table found through the trailer, and checks that it describes the blocks between the
+     * dictionary and the table.
+     */
+    private static void readOffsetTable(FileChannel channel, long size, long firstBlock, long[] blockOffsets)
+            throws IOException {
+        if (size < firstBlock + BudgetFile.TRAILER_SIZE) {
+            throw new EOFException("Budget file truncated before its offset table");
+        }
+        long tableOffset = read(channel, size - BudgetFile.TRAILER_SIZE, BudgetFile.TRAILER_SIZE).getLong();
+        if (tableOffset < firstBlock || tableOffset > size - BudgetFile.TRAILER_SIZE) {
+            throw new IOException("Damaged budget file: offset table out of range");
+        }
+        int blockCount = blockOffsets.length - 1;
+        ByteBuffer table = readSection(channel, tableOffset, BudgetFile.FIRST_BLOCK_SECTION + blockCount);
+        if (BudgetFile.toCount(BudgetFile.getVarLong(table)) != blockCount) {
+            throw new IOException("Damaged budget file: wrong block count in the offset table");
+        }
+        long offset = 0;
+        for (int block = 0; block < blockCount; block++) {
+            offset += BudgetFile.getVarLong(table);
+            blockOffsets[block] = offset;
+        }
+        blockOffsets[blockCount] = tableOffset;
+        for (int block = 0; block < blockCount; block++) {
+            long length = blockOffsets[block + 1] - blockOffsets[block];
+            if ((block == 0 && blockOffsets[0] != firstBlock) || length < 2 * Integer.BYTES
+                    || length > Integer.MAX_VALUE) {
+                throw new IOException("Damaged budget file: wrong offset of section "
+                        + (BudgetFile.FIRST_BLOCK_SECTION + block));
+            }
+        }
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Budget file truncated");
+            }
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Reads the section at a position of the file and returns its content, after checking its checksum.
+     */
+    private static ByteBuffer readSection(FileChannel channel, long position, int index) throws IOException {
+        if (position + Integer.BYTES > channel.size()) {
+            throw new EOFException("Budget file truncated before section " + index);
+        }
+        int length = read(channel, position, Integer.BYTES).getInt();
+        if (length < 0 || position + 2L * Integer.BYTES + length > channel.size()) {
+            throw new EOFException("Budget file truncated in section " + index);
+        }
+        return BudgetFile.section(read(channel, position, 2 * Integer.BYTES + length), index);
+    }
+
+    /**
+     * Returns the size of a section in the file, from its content before it is read.
+     */
+    private static long sectionSize(ByteBuffer content) {
+        return 2L * Integer.BYTES + content.remaining();
+    }
+
+    /**
+     * Returns the number of transactions in the file.
+     */
+    public int size() {
+        return transactions.size();
+    }
+
+    /**
+     * Returns the transactions of the file, in the order of the budget. The list is read-only, and decodes the
+     * rows it is asked for on the fly.
+     *
+     * @return the transactions
+     * @throws UncheckedIOException from the methods of the list, if a block is damaged
+     */
+    public List<Transaction> transactions() {
+        return transactions;
+    }
+
+    /**
+     * Decodes all the rows of the file and replaces the transactions of a budget with them, at once. Until then,
+     * the budget is unchanged and can be read.
+     *
+     * @param budget the budget to load the file into
+     * @throws IOException if the file is damaged
+     */
+    public void loadInto(Budget budget) throws IOException {
+        loadInto(budget, Progress.NONE);
+    }
+
+    /**
+     * Loads the file into a budget like {@link #loadInto(Budget)}, reporting the blocks decoded to a progress.
+     * If the load fails or is cancelled, the budget is left unchanged.
+     *
+     * @param budget   the budget to load the file into
+     * @param progress the progress to report to
+     * @throws IOException                                 if the file is damaged
+     * @throws java.util.concurrent.CancellationException if the progress has been cancelled
+     */
+    public void loadInto(Budget budget, Progress progress) throws IOException {
+        budget.replaceWith(load(progress));
+    }
+
+    private Budget load(Progress progress) throws IOException {
+        progress.start(size());
+        if (serialized != null) {
+            progress.advance(size(), 0);
+            return serialized;
+        }
+        int rowCount = metadata.rowCount();
+        long[] ids = new long[rowCount];
+        long[] epochSeconds = new long[rowCount];
+        long[] amounts = new long[rowCount];
+        String[] descriptions = new String[rowCount];
+        // Each block fills its own range of the columns, so the blocks are decoded in parallel
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(blockChunks.length);
+        for (int block = 0; block < blockChunks.length; block++) {
+            int index = block;
+            tasks.add(ForkJoinTask.adapt(() -> {
+                progress.checkCancelled();
+                int count = decode(index, index * metadata.blockRows(), ids, epochSeconds, amounts, descriptions);
+                progress.advance(count, blockOffsets[index + 1] - blockOffsets[index]);
+                return null;
+            }));
+        }
+        try {
+            ForkJoinTask.invokeAll(tasks);
+        } catch (CancellationException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            // A task wraps the IOException of its block, and the pool may wrap the exception of another thread
+            for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                if (cause instanceof IOException ioException) {
+                    throw ioException;
+                }
+            }
+            throw e;
+        }
+        return Budget.fromColumns(ids, epochSeconds, amounts, descriptions, metadata.idAllocator());
+    }
+
+    private synchronized Block block(int block) {
+        Block decoded = cache.get(block);
+        if (decoded == null) {
+            int count = Math.min(metadata.blockRows(), metadata.rowCount() - block * metadata.blockRows());
+            decoded = new Block(new long[count], new long[count], new long[count], new String[count]);
+            try {
+                decode(block, 0, decoded.ids, decoded.epochSeconds, decoded.amounts, decoded.descriptions);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            cache.put(block, decoded);
+        }
+        return decoded;
+    }
+
+    /**
+     * Decodes a block into the columns, starting at index {@code from} of the columns.
+     *
+     * @return the number of rows of the block
+     */
+    private int decode(int block, int from, long[] ids, long[] epochSeconds, long[] amounts,
+                       String[] descriptions) throws IOException {
+        int chunk = blockChunks[block];
+        ByteBuffer buffer = chunk(chunk).duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        buffer.limit((int) (blockOffsets[block + 1] - chunkOffsets[chunk]));
+        buffer.position((int) (blockOffsets[block] - chunkOffsets[chunk]));
+        int section = BudgetFile.FIRST_BLOCK_SECTION + block;
+        try {
+            return BudgetFile.decodeBlock(BudgetFile.section(buffer, section, compression), block, metadata,
+                    dictionary, from, ids, epochSeconds, amounts, descriptions);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Damaged budget file in section " + section, e);
+        }
+    }
+
+    private synchronized MappedByteBuffer chunk(int chunk) throws IOException {
+        if (chunks[chunk] == null) {
+            chunks[chunk] = channel.map(FileChannel.MapMode.READ_ONLY, chunkOffsets[chunk],
+                    chunkOffsets[chunk + 1] - chunkOffsets[chunk]);
+        }
+        return chunks[chunk];
+    }
+
+    /**
+     * Closes the file. The rows already decoded can still be read.
+     */
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    /**
+     * The decoded rows of a block.
+     */
+    private record Block(long[] ids, long[] epochSeconds, long[] amounts, String[] descriptions) {
+    }
+
+    private final class Rows extends AbstractList<Transaction> implements RandomAccess {
+        @Override
+        public int size() {
+            return metadata.rowCount();
+        }
+
+        @Override
+        public Transaction get(int index) {
+            Objects.checkIndex(index, size());
+            Block block = block(index / metadata.blockRows());
+            int row = index % metadata.blockRows();
+            return new Transaction(block.ids[row], new Money(block.amounts[row]),
+                    ColumnStore.toDateTime(block.epochSeconds[row]), block.descriptions[row]);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Keeps the columns of the segments of a {@link ColumnStore} in a memory-mapped file, so that the rows of a
+ * budget live in the OS page cache rather than on the Java heap.
+ * <p>
+ * The file is divided into fixed-size regions, one per segment. A region holds the id, date, amount and
+ * description code columns of {@value ColumnStore#SEGMENT_SIZE} rows, one column after the other, so that
+ * each column of a segment can be read in bulk. Regions are mapped {@value #REGIONS_PER_CHUNK} at a time.
+ * Copying a frozen segment writes a new region; a region is recycled once the segment owning it has been
+ * garbage collected, i.e. once no snapshot can read it anymore.
+ * <p>
+ * The file is working storage only: it is deleted when it is closed, which happens once the store is
+ * garbage collected or the JVM exits. Its layout is not the one of a saved budget: a mapped budget is saved
+ * by {@link BudgetFile} like any other, from a snapshot of its segments, and {@link LazyBudgetFile} maps the
+ * saved {@code .bma} file itself rather than this one. The descriptions themselves stay in the
+ * {@link DescriptionDictionary} of the store, which holds one string per distinct description.
+ *
+ * @author Alessandro Catenacci
+ */
+final class MappedSegmentFile implements ColumnStore.SegmentFactory {
+    private static final int REGIONS_PER_CHUNK = 2048;
+    private static final int IDS = 0;
+    private static final int EPOCH_SECONDS = IDS + ColumnStore.SEGMENT_SIZE * Long.BYTES;
+    private static final int AMOUNTS = EPOCH_SECONDS + ColumnStore.SEGMENT_SIZE * Long.BYTES;
+    private static final int DESCRIPTION_CODES = AMOUNTS + ColumnStore.SEGMENT_SIZE * Long.BYTES;
+    /**
+     * Size of the region of a segment: 28 bytes per row.
+     */
+    static final int REGION_SIZE = DESCRIPTION_CODES + ColumnStore.SEGMENT_SIZE * Integer.BYTES;
+    private static final long CHUNK_SIZE = (long) REGION_SIZE * REGIONS_PER_CHUNK;
+
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final FileChannel channel;
+    private final List<MappedByteBuffer> chunks = new ArrayList<>();
+    /** Regions of collected segments, released by the cleaner thread. */
+    private final Queue<Integer> freeRegions = new ConcurrentLinkedQueue<>();
+    private int regionCount;
+
+    private MappedSegmentFile(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Creates the file, replacing any existing file at the same path.
+     *
+     * @param file the path of the file
+     * @return the segment factory backed by the file
+     * @throws IOException if the file cannot be created
+     */
+    static MappedSegmentFile create(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+        MappedSegmentFile segmentFile = new MappedSegmentFile(channel);
+        CLEANER.register(segmentFile, new Close(channel));
+        return segmentFile;
+    }
+
+    /**
+     * Returns the number of regions of the file, in use or free.
+     */
+    synchronized int regionCount() {
+        return regionCount;
+    }
+
+    @Override
+    public ColumnStore.Segment create(int generation) {
+        return new MappedSegment(generation, this);
+    }
+
+    /**
+     * Returns a free region, growing the file if there is none. Called by the writers of the budget, and by its
+     * compaction, which creates the segments of the compacted store without holding the lock of the budget.
+     */
+    private synchronized int allocate() {
+        Integer free = freeRegions.poll();
+        if (free != null) {
+            return free;
+        }
+        if (regionCount == chunks.size() * REGIONS_PER_CHUNK) {
+            try {
+                MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_WRITE, chunks.size() * CHUNK_SIZE,
+                        CHUNK_SIZE);
+                chunk.order(ByteOrder.nativeOrder());
+                chunks.add(chunk);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot grow the budget file", e);
+            }
+        }
+        return regionCount++;
+    }
+
+    private synchronized ByteBuffer region(int region) {
+        return chunks.get(region / REGIONS_PER_CHUNK)
+                .slice((region % REGIONS_PER_CHUNK) * REGION_SIZE, REGION_SIZE)
+                .order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * A segment whose columns are stored in a region of the file.
+     */
+    private static final class MappedSegment extends ColumnStore.Segment {
+        private final MappedSegmentFile file;
+        private final ByteBuffer buffer;
+
+        MappedSegment(int generation, MappedSegmentFile file) {
+            super(generation);
+            this.file = file;
+            int region = file.allocate();
+            buffer = file.region(region);
+            CLEANER.register(this, new Release(file.freeRegions, region));
+        }
+
+        private MappedSegment(int generation, MappedSegment source) {
+            super(generation, source);
+            file = source.file;
+            int region = file.allocate();
+            buffer = file.region(region);
+            buffer.put(0, source.buffer, 0, REGION_SIZE);
+            CLEANER.register(this, new Release(file.freeRegions, region));
+        }
+
+        @Override
+        long id(int offset) {
+            return buffer.getLong(IDS + offset * Long.BYTES);
+        }
+
+        @Override
+        long epochSecond(int offset) {
+            return buffer.getLong(EPOCH_SECONDS + offset * Long.BYTES);
+        }
+
+        @Override
+        long amount(int offset) {
+            return buffer.getLong(AMOUNTS + offset * Long.BYTES);
+        }
+
+        @Override
+        int descriptionCode(int offset) {
+            return buffer.getInt(DESCRIPTION_CODES + offset * Integer.BYTES);
+        }
+
+        @Override
+        void set(int offset, long id, long epochSecond, long amount, int descriptionCode) {
+            buffer.putLong(IDS + offset * Long.BYTES, id);
+            buffer.putLong(EPOCH_SECONDS + offset * Long.BYTES, epochSecond);
+            buffer.putLong(AMOUNTS + offset * Long.BYTES, amount);
+            buffer.putInt(DESCRIPTION_CODES + offset * Integer.BYTES, descriptionCode);
+        }
+
+        @Override
+        long[] ids() {
+            return longColumn(IDS);
+        }
+
+        @Override
+        long[] epochSeconds() {
+            return longColumn(EPOCH_SECONDS);
+        }
+
+        @Override
+        long[] amounts() {
+            return longColumn(AMOUNTS);
+        }
+
+        @Override
+        int[] descriptionCodes() {
+            int[] column = new int[ColumnStore.SEGMENT_SIZE];
+            buffer.slice(DESCRIPTION_CODES, column.length * Integer.BYTES).order(ByteOrder.nativeOrder())
+                    .asIntBuffer().get(column);
+            return column;
+        }
+
+        @Override
+        ColumnStore.Segment copy(int generation) {
+            return new MappedSegment(generation, this);
+        }
+
+        private long[] longColumn(int start) {
+            long[] column = new long[ColumnStore.SEGMENT_SIZE];
+            buffer.slice(start, column.length * Long.BYTES).order(ByteOrder.nativeOrder())
+                    .asLongBuffer().get(column);
+            return column;
+        }
+    }
+
+    /**
+     * Returns the region of a collected segment to the free list. It must not refer to the segment.
+     */
+    private record Release(Queue<Integer> freeRegions, int region) implements Runnable {
+        @Override
+        public void run() {
+            freeRegions.add(region);
+        }
+    }
+
+    /**
+     * Closes, and thereby deletes, the file of a collected store.
+     */
+    private record Close(FileChannel channel) implements Runnable {
+        @Override
+        public void run() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Nothing left to do with the file
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * An exact amount of money, stored as a whole number of minor units (cents).
+ * <p>
+ * Amounts always have {@link #SCALE} decimal places. Sums of amounts are exact, unlike the {@code float}
+ * amounts used before, which drifted as transactions accumulated. {@link Budget} keeps its amounts as
+ * {@code long} minor units in a primitive column and only wraps them in a {@code Money} when a value is
+ * returned to the caller.
+ *
+ * @param minorUnits the amount in minor units, e.g. {@code 1050} for {@code 10.50}
+ *
+ * @author Alessandro Catenacci
+ */
+public record Money(long minorUnits) implements Comparable<Money> {
+    /**
+     * Number of decimal places of an amount.
+     */
+    public static final int SCALE = 2;
+
+    /**
+     * Number of minor units in a major unit.
+     */
+    public static final long MINOR_UNITS_PER_UNIT = 100;
+
+    public static final Money ZERO = new Money(0);
+
+    /**
+     * Parses an amount such as {@code "12"}, {@code "-3.5"} or {@code "1250.99"}.
+     *
+     * @param text the text to parse
+     * @return the amount
+     * @throws NumberFormatException if the text is not a number, has more than {@link #SCALE} decimal places
+     *                               or is too large
+     */
+    public static Money parse(String text) {
+        BigDecimal value = new BigDecimal(text.trim());
+        try {
+            return of(value.setScale(SCALE, RoundingMode.UNNECESSARY));
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Invalid amount: " + text);
+        }
+    }
+
+    /**
+     * Converts a decimal amount.
+     *
+     * @param value the amount, with at most {@link #SCALE} decimal places
+     * @return the amount
+     * @throws ArithmeticException if the amount has more decimal places or does not fit in a {@code long}
+     */
+    public static Money of(BigDecimal value) {
+        return new Money(value.setScale(SCALE, RoundingMode.UNNECESSARY).unscaledValue().longValueExact());
+    }
+
+    /**
+     * Converts a {@code float} amount, as stored by earlier versions, rounding it to the nearest minor unit.
+     * The shortest decimal representation of the float is used, so {@code 0.1f} becomes exactly {@code 0.10}.
+     *
+     * @param value the amount
+     * @return the amount
+     */
+    public static Money ofFloat(float value) {
+        return of(new BigDecimal(Float.toString(value)).setScale(SCALE, RoundingMode.HALF_EVEN));
+    }
+
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(minorUnits, SCALE);
+    }
+
+    public Money plus(Money other) {
+        return new Money(Math.addExact(minorUnits, other.minorUnits));
+    }
+
+    public Money negate() {
+        return new Money(Math.negateExact(minorUnits));
+    }
+
+    public int signum() {
+        return Long.signum(minorUnits);
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(minorUnits, other.minorUnits);
+    }
+
+    /**
+     * Returns the amount with {@link #SCALE} decimal places and no grouping, e.g. {@code -1250.50}.
+     */
+    @Override
+    public String toString() {
+        return toBigDecimal().toPlainString();
+    }
+}
@@ -0,0 +1,29 @@
+package model;
+
+import java.time.LocalDate;
+
+/**
+ * The totals of the transactions of one period of a budget, as returned by {@link Budget#getRollup}.
+ *
+ * @param period  the kind of period
+ * @param start   the first day of the period
+ * @param count   the number of transactions
+ * @param total   the sum of the amounts
+ * @param income  the sum of the positive amounts
+ * @param expense the sum of the negative amounts
+ *
+ * @author Alessandro Catenacci
+ */
+public record PeriodTotal(RollupPeriod period, LocalDate start, int count, Money total, Money income,
+                          Money expense) {
+    /**
+     * Returns the day after the last day of the period.
+     */
+    public LocalDate end() {
+        return switch (period) {
+            case DAY -> start.plusDays(1);
+            case MONTH -> start.plusMonths(1);
+            case YEAR -> start.plusYears(1);
+        };
+    }
+}
@@ -0,0 +1,66 @@
+package model;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Receives the progress of a long operation, such as saving, loading or exporting a budget, and tells it whether
+ * it has been cancelled.
+ * <p>
+ * The operation calls {@link #start(long)} once it knows how many rows it will process, then {@link #advance}
+ * as it goes, and checks {@link #checkCancelled()} between two steps: cancellation is cooperative, the
+ * operation stops at the next check and cleans up after itself. An operation split across threads, such as
+ * {@link LazyBudgetFile#loadInto(Budget, Progress)}, reports from each of them, so implementations must be
+ * thread-safe.
+ *
+ * @author Alessandro Catenacci
+ */
+public interface Progress {
+    /**
+     * A progress that ignores the reports and is never cancelled.
+     */
+    Progress NONE = new Progress() {
+        @Override
+        public void start(long totalRows) {
+        }
+
+        @Override
+        public void advance(long rows, long bytes) {
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+    };
+
+    /**
+     * Reports the number of rows the operation will process.
+     *
+     * @param totalRows the number of rows
+     */
+    void start(long totalRows);
+
+    /**
+     * Reports that more rows have been processed and more bytes read or written since the last report.
+     *
+     * @param rows  the number of rows processed since the last report
+     * @param bytes the number of bytes read or written since the last report
+     */
+    void advance(long rows, long bytes);
+
+    /**
+     * Tells whether the operation has been cancelled.
+     */
+    boolean isCancelled();
+
+    /**
+     * Stops the operation if it has been cancelled.
+     *
+     * @throws CancellationException if the operation has been cancelled
+     */
+    default void checkCancelled() {
+        if (isCancelled()) {
+            throw new CancellationException("Operation cancelled");
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package model;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.IntPredicate;
+import java.util.stream.Collectors;
+
+/**
+ * A condition on the transactions of a {@link Budget}, run by {@link Budget#query(Query)}.
+ * <p>
+ * Queries are built from the static factories below and combined with {@link #and(Query...)} and
+ * {@link #or(Query...)}. They are immutable and can be reused on several budgets. The budget does not
+ * evaluate a query transaction by transaction: it plans it over its indexes, see {@link Budget#explain(Query)}.
+ *
+ * @author Alessandro Catenacci
+ */
+public abstract class Query {
+    private static final Query ALL = new All();
+
+    Query() {
+    }
+
+    /**
+     * Returns a query accepting every transaction.
+     */
+    public static Query all() {
+        return ALL;
+    }
+
+    /**
+     * Returns a query accepting the transactions whose description contains the given text, ignoring case.
+     *
+     * @param text the text to look for
+     * @return the query
+     * @throws IllegalArgumentException if the text is empty or whitespace
+     */
+    public static Query descriptionContains(String text) {
+        if (text == null || text.trim().isEmpty()) {
+            throw new IllegalArgumentException("Description cannot be empty or whitespace");
+        }
+        return new Description(text);
+    }
+
+    /**
+     * Returns a query accepting the transactions dated after {@code startDate} and before {@code endDate},
+     * like {@link Budget#filterTransactions(String, LocalDateTime, LocalDateTime)}.
+     *
+     * @param startDate the start of the range, excluded, or null for no lower bound
+     * @param endDate   the end of the range, excluded, or null for no upper bound
+     * @return the query
+     * @throws IllegalArgumentException if the end date is before the start date
+     */
+    public static Query dateBetween(LocalDateTime startDate, LocalDateTime endDate) {
+        if (startDate != null && endDate != null && endDate.isBefore(startDate)) {
+            throw new IllegalArgumentException("End date cannot be before start date");
+        }
+        return new DateRange(startDate, endDate);
+    }
+
+    /**
+     * Returns a query accepting the transactions whose amount is between {@code min} and {@code max}.
+     *
+     * @param min the smallest amount, included, or null for no lower bound
+     * @param max the largest amount, included, or null for no upper bound
+     * @return the query
+     * @throws IllegalArgumentException if {@code max} is smaller than {@code min}
+     */
+    public static Query amountBetween(Money min, Money max) {
+        if (min != null && max != null && max.compareTo(min) < 0) {
+            throw new IllegalArgumentException("Maximum amount cannot be below minimum amount");
+        }
+        return new AmountRange(min == null ? Long.MIN_VALUE : min.minorUnits(),
+                max == null ? Long.MAX_VALUE : max.minorUnits());
+    }
+
+    /**
+     * Returns a query accepting the income transactions, i.e. those with a positive amount, as counted by
+     * {@link BudgetSummary#income()}.
+     */
+    public static Query income() {
+        return new AmountRange(1, Long.MAX_VALUE);
+    }
+
+    /**
+     * Returns a query accepting the expense transactions, i.e. those with an amount of zero or less, as counted
+     * by {@link BudgetSummary#expense()}.
+     */
+    public static Query expense() {
+        return new AmountRange(Long.MIN_VALUE, 0);
+    }
+
+    /**
+     * Returns a query accepting the transactions with one of the given ids.
+     *
+     * @param ids the ids to accept
+     * @return the query
+     */
+    public static Query ids(Collection<Long> ids) {
+        return new Ids(ids.stream().mapToLong(Long::longValue).sorted().distinct().toArray());
+    }
+
+    /**
+     * Returns a query accepting the transactions accepted by all the given queries.
+     */
+    public static Query and(Query... queries) {
+        return queries.length == 1 ? queries[0] : new And(List.of(queries));
+    }
+
+    /**
+     * Returns a query accepting the transactions accepted by at least one of the given queries.
+     */
+    public static Query or(Query... queries) {
+        return queries.length == 1 ? queries[0] : new Or(List.of(queries));
+    }
+
+    public Query and(Query other) {
+        return and(this, other);
+    }
+
+    public Query or(Query other) {
+        return or(this, other);
+    }
+
+    /**
+     * Returns a condition on the rows of the planned budget equivalent to this query.
+     */
+    abstract IntPredicate matcher(QueryPlanner planner);
+
+    /**
+     * Returns the cheapest way to find a superset of the rows accepted by this query through the indexes of
+     * the planned budget, or null if every row has to be scanned.
+     */
+    abstract QueryPlanner.Path path(QueryPlanner planner);
+
+    /**
+     * Returns a readable form of this query, as shown by {@link Budget#explain(Query)}.
+     */
+    @Override
+    public abstract String toString();
+
+    static final class All extends Query {
+        @Override
+        IntPredicate matcher(QueryPlanner planner) {
+            return row -> true;
+        }
+
+        @Override
+        QueryPlanner.Path path(QueryPlanner planner) {
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return "all";
+        }
+    }
+
+    static final class Description extends Query {
+        final String text;
+
+        Description(String text) {
+            this.text = text;
+        }
+
+        @Override
+        IntPredicate matcher(QueryPlanner planner) {
+            return planner.descriptionMatcher(text);
+        }
+
+        @Override
+        QueryPlanner.Path path(QueryPlanner planner) {
+            return planner.descriptionPath(text);
+        }
+
+        @Override
+        public String toString() {
+            return "description contains \"" + text + "\"";
+        }
+    }
+
+    static final class DateRange extends Query {
+        final LocalDateTime startDate;
+        final LocalDateTime endDate;
+
+        DateRange(LocalDateTime startDate, LocalDateTime endDate) {
+            this.startDate = startDate;
+            this.endDate = endDate;
+        }
+
+        @Override
+        IntPredicate matcher(QueryPlanner planner) {
+            return planner.dateMatcher(startDate, endDate);
+        }
+
+        @Override
+        QueryPlanner.Path path(QueryPlanner planner) {
+            return planner.datePath(startDate, endDate);
+        }
+
+        @Override
+        public String toString() {
+            return "date" + (startDate == null ? "" : " after " + startDate)
+                    + (endDate == null ? "" : (startDate == null ? "" : " and") + " before " + endDate);
+        }
+    }
+
+    static final class AmountRange extends Query {
+        /** Bounds in minor units, both included. */
+        final long min;
+        final long max;
+
+        AmountRange(long min, long max) {
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        IntPredicate matcher(QueryPlanner planner) {
+            return planner.amountMatcher(min, max);
+        }
+
+        @Override
+        QueryPlanner.Path path(QueryPlanner planner) {
+            return planner.amountPath(min, max);
+        }
+
+        @Override
+        public String toString() {
+            if (min == 1 && max == Long.MAX_VALUE) {
+                return "income";
+            }
+            if (min == Long.MIN_VALUE && max == 0) {
+                return "expense";
+            }
+            return "amount" + (min == Long.MIN_VALUE ? "" : " from " + new Money(min))
+                    + (max == Long.MAX_VALUE ? "" : " to " + new Money(max));
+        }
+    }
+
+    static final class Ids extends Query {
+        /** Distinct ids, in ascending order. */
+        final long[] ids;
+
+        Ids(long[] ids) {
+            this.ids = ids;
+        }
+
+        @Override
+        IntPredicate matcher(QueryPlanner planner) {
+            return planner.idMatcher(ids);
+        }
+
+        @Override
+        QueryPlanner.Path path(QueryPlanner planner) {
+            return planner.idPath(ids);
+        }
+
+        @Override
+        public String toString() {
+            return ids.length <= 5 ? "id in " + Arrays.toString(ids) : "id in " + ids.length + " ids";
+        }
+    }
+
+    static final class And extends Query {
+        final List<Query> queries;
+
+        And(List<Query> queries) {
+            this.queries = queries;
+        }
+
+        @Override
+        IntPredicate matcher(QueryPlanner planner) {
+            IntPredicate matcher = null;
+            for (Query query : queries) {
+                IntPredicate next = query.matcher(planner);
+                matcher = matcher == null ? next : matcher.and(next);
+            }
+            return matcher == null ? row -> true : matcher;
+        }
+
+        /**
+         * Uses the most selective path of the operands; the other operands are checked on its rows, which
+         * intersects them without building their candidate rows.
+         */
+        @Override
+        QueryPlanner.Path path(QueryPlanner planner) {
+            QueryPlanner.Path best = null;
+            for (Query query : queries) {
+                QueryPlanner.Path path = query.path(planner);
+                if (path != null && (best == null || path.estimate() < best.estimate())) {
+                    best = path;
+                }
+            }
+            return best;
+        }
+
+        @Override
+        public String toString() {
+            return queries.stream().map(Query::toString).collect(Collectors.joining(" AND ", "(", ")"));
+        }
+    }
+
+    static final class Or extends Query {
+        final List<Query> queries;
+
+        Or(List<Query> queries) {
+            this.queries = queries;
+        }
+
+        @Override
+        IntPredicate matcher(QueryPlanner planner) {
+            IntPredicate matcher = null;
+            for (Query query : queries) {
+                IntPredicate next = query.matcher(planner);
+                matcher = matcher == null ? next : matcher.or(next);
+            }
+            return matcher == null ? row -> false : matcher;
+        }
+
+        /**
+         * Unites the paths of the operands, which is only possible if each of them has one.
+         */
+        @Override
+        QueryPlanner.Path path(QueryPlanner planner) {
+            List<QueryPlanner.Path> paths = new ArrayList<>(queries.size());
+            for (Query query : queries) {
+                QueryPlanner.Path path = query.path(planner);
+                if (path == null) {
+                    return null;
+                }
+                paths.add(path);
+            }
+            return planner.unionPath(paths);
+        }
+
+        @Override
+        public String toString() {
+            return queries.stream().map(Query::toString).collect(Collectors.joining(" OR ", "(", ")"));
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package model;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+import java.util.function.Supplier;
+
+/**
+ * Plans a {@link Query} over the indexes of a {@link Budget}, which calls it with its read lock held.
+ * <p>
+ * Each part of the query that an index can answer offers a {@link Path}: the date and amount indexes give the
+ * rows of a date or amount range, the id index the rows of a set of ids, and the description dictionary proves
+ * that no row can match when no distinct description does. The planner
+ * keeps the most selective path of an AND, unites the paths of an OR when all its operands have one, and
+ * scans the whole store instead when the path would visit too large a share of the rows. Either way, every
+ * candidate row is then checked against the whole query on the columns of the store, and only the accepted
+ * rows are materialized, in the order of the budget.
+ *
+ * @author Alessandro Catenacci
+ */
+final class QueryPlanner {
+    /**
+     * Relative cost of visiting a row through an index, which reads the rows out of order and sorts them,
+     * compared to a sequential scan.
+     */
+    private static final int INDEX_ROW_COST = 4;
+
+    private final ColumnStore store;
+    private final SortedRowIndex timeIndex;
+    private final SortedRowIndex amountIndex;
+    private final IdIndex idIndex;
+    /** Accepted description codes of each text of the query, computed once per text. */
+    private final Map<String, boolean[]> descriptionMatches = new HashMap<>();
+
+    QueryPlanner(ColumnStore store, SortedRowIndex timeIndex, SortedRowIndex amountIndex, IdIndex idIndex) {
+        this.store = store;
+        this.timeIndex = timeIndex;
+        this.amountIndex = amountIndex;
+        this.idIndex = idIndex;
+    }
+
+    /**
+     * Plans a query.
+     *
+     * @param query the query to plan
+     * @return the plan
+     */
+    Plan plan(Query query) {
+        IntPredicate matcher = query.matcher(this);
+        Path path = query.path(this);
+        int liveCount = store.liveCount();
+        boolean useIndex = path != null && path.estimate() * INDEX_ROW_COST < liveCount;
+
+        StringBuilder explanation = new StringBuilder();
+        explanation.append("Query: ").append(query).append('\n');
+        if (useIndex) {
+            explanation.append("Access: ");
+            path.explain(explanation, "  ");
+            explanation.append("Rejected: full scan of ").append(liveCount).append(" rows\n");
+        } else {
+            explanation.append("Access: full scan of ").append(liveCount).append(" rows\n");
+            if (path != null) {
+                explanation.append("Rejected: ");
+                path.explain(explanation, "  ");
+            } else {
+                explanation.append("Rejected: no index applies\n");
+            }
+        }
+        explanation.append("Filter: ").append(query).append(", checked on the columns of each candidate row\n");
+        explanation.append("Order: budget order");
+        return new Plan(useIndex ? path : null, matcher, explanation.toString());
+    }
+
+    IntPredicate descriptionMatcher(String text) {
+        boolean[] matches = descriptionMatches(text);
+        return row -> {
+            int code = store.descriptionCode(row);
+            return code != DescriptionDictionary.NULL_CODE && matches[code];
+        };
+    }
+
+    /**
+     * Descriptions have no row index; the dictionary only rules out every row when no description matches.
+     */
+    Path descriptionPath(String text) {
+        for (boolean match : descriptionMatches(text)) {
+            if (match) {
+                return null;
+            }
+        }
+        return new Path("no description contains \"" + text + "\"", 0, () -> new int[0], List.of());
+    }
+
+    private boolean[] descriptionMatches(String text) {
+        return descriptionMatches.computeIfAbsent(text, key -> {
+            String needle = key.toLowerCase();
+            return store.descriptionsMatching(description ->
+                    DescriptionDictionary.containsIgnoreCase(description, needle));
+        });
+    }
+
+    IntPredicate dateMatcher(LocalDateTime startDate, LocalDateTime endDate) {
+        long from = firstSecond(startDate);
+        long to = endSecond(endDate);
+        return row -> {
+            long epochSecond = store.epochSecond(row);
+            return epochSecond >= from && epochSecond < to;
+        };
+    }
+
+    Path datePath(LocalDateTime startDate, LocalDateTime endDate) {
+        int from = startDate == null ? 0 : timeIndex.lowerBound(firstSecond(startDate));
+        int to = endDate == null ? timeIndex.size() : timeIndex.lowerBound(endSecond(endDate));
+        String range = "date index" + (startDate == null ? "" : " after " + startDate)
+                + (endDate == null ? "" : " before " + endDate);
+        return rangePath(range, timeIndex, from, to);
+    }
+
+    IntPredicate amountMatcher(long min, long max) {
+        return row -> {
+            long amount = store.amount(row);
+            return amount >= min && amount <= max;
+        };
+    }
+
+    Path amountPath(long min, long max) {
+        int from = min == Long.MIN_VALUE ? 0 : amountIndex.lowerBound(min);
+        int to = max == Long.MAX_VALUE ? amountIndex.size() : amountIndex.upperBound(max);
+        String range = "amount index" + (min == Long.MIN_VALUE ? "" : " from " + new Money(min))
+                + (max == Long.MAX_VALUE ? "" : " to " + new Money(max));
+        return rangePath(range, amountIndex, from, to);
+    }
+
+    /**
+     * Returns the path over the positions {@code [from, to)} of a sorted index.
+     */
+    private static Path rangePath(String description, SortedRowIndex index, int from, int to) {
+        return new Path(description, Math.max(0, to - from), () -> {
+            int[] rows = new int[Math.max(0, to - from)];
+            for (int i = 0; i < rows.length; i++) {
+                rows[i] = index.rowAt(from + i);
+            }
+            Arrays.sort(rows);
+            return rows;
+        }, List.of());
+    }
+
+    IntPredicate idMatcher(long[] ids) {
+        return row -> Arrays.binarySearch(ids, store.id(row)) >= 0;
+    }
+
+    Path idPath(long[] ids) {
+        return new Path("id index, " + ids.length + " lookups", ids.length, () -> {
+            int[] rows = new int[ids.length];
+            int count = 0;
+            for (long id : ids) {
+                int row = idIndex.get(id);
+                if (row != -1) {
+                    rows[count++] = row;
+                }
+            }
+            rows = Arrays.copyOf(rows, count);
+            Arrays.sort(rows);
+            return rows;
+        }, List.of());
+    }
+
+    Path unionPath(List<Path> paths) {
+        long estimate = 0;
+        for (Path path : paths) {
+            estimate += path.estimate();
+        }
+        return new Path("union of " + paths.size() + " paths", estimate, () -> {
+            int[][] parts = new int[paths.size()][];
+            int length = 0;
+            for (int i = 0; i < parts.length; i++) {
+                parts[i] = paths.get(i).rows();
+                length += parts[i].length;
+            }
+            int[] rows = new int[length];
+            int position = 0;
+            for (int[] part : parts) {
+                System.arraycopy(part, 0, rows, position, part.length);
+                position += part.length;
+            }
+            Arrays.sort(rows);
+            int count = 0;
+            for (int i = 0; i < rows.length; i++) {
+                if (count == 0 || rows[count - 1] != rows[i]) {
+                    rows[count++] = rows[i];
+                }
+            }
+            return Arrays.copyOf(rows, count);
+        }, paths);
+    }
+
+    /**
+     * Returns the first stored second after a start date, as in {@link Budget#filterTransactions}.
+     */
+    private static long firstSecond(LocalDateTime startDate) {
+        return startDate == null ? Long.MIN_VALUE : ColumnStore.toEpochSecond(startDate) + 1;
+    }
+
+    /**
+     * Returns the first stored second not before an end date.
+     */
+    private static long endSecond(LocalDateTime endDate) {
+        return endDate == null ? Long.MAX_VALUE
+                : ColumnStore.toEpochSecond(endDate) + (endDate.getNano() > 0 ? 1 : 0);
+    }
+
+    /**
+     * A way to find, through the indexes, a superset of the rows accepted by part of a query.
+     */
+    static final class Path {
+        private final String description;
+        private final long estimate;
+        private final Supplier<int[]> rows;
+        private final List<Path> children;
+
+        Path(String description, long estimate, Supplier<int[]> rows, List<Path> children) {
+            this.description = description;
+            this.estimate = estimate;
+            this.rows = rows;
+            this.children = children;
+        }
+
+        /**
+         * Returns the number of rows the path visits, or an upper bound of it.
+         */
+        long estimate() {
+            return estimate;
+        }
+
+        /**
+         * Returns the candidate rows, in ascending order. They may include deleted rows.
+         */
+        int[] rows() {
+            return rows.get();
+        }
+
+        private void explain(StringBuilder explanation, String indent) {
+            explanation.append(description).append(", ~").append(estimate).append(" rows\n");
+            for (Path child : children) {
+                explanation.append(indent).append("- ");
+                child.explain(explanation, indent + "  ");
+            }
+        }
+    }
+
+    /**
+     * The plan of a query.
+     *
+     * @param path        the path giving the candidate rows, or null to scan every row
+     * @param matcher     the condition the candidate rows are checked against
+     * @param explanation a readable description of the plan
+     */
+    record Plan(Path path, IntPredicate matcher, String explanation) {
+    }
+}
@@ -0,0 +1,71 @@
+package model;
+
+import java.time.LocalDate;
+
+/**
+ * The periods by which {@link Budget#getRollup} groups the transactions of a budget.
+ *
+ * @author Alessandro Catenacci
+ */
+public enum RollupPeriod {
+    DAY {
+        @Override
+        long keyOfDay(long epochDay) {
+            return epochDay;
+        }
+
+        @Override
+        LocalDate start(long key) {
+            return LocalDate.ofEpochDay(key);
+        }
+    },
+    MONTH {
+        @Override
+        long keyOfDay(long epochDay) {
+            LocalDate date = LocalDate.ofEpochDay(epochDay);
+            return date.getYear() * 12L + date.getMonthValue() - 1;
+        }
+
+        @Override
+        LocalDate start(long key) {
+            return LocalDate.of((int) Math.floorDiv(key, 12), Math.floorMod(key, 12) + 1, 1);
+        }
+    },
+    YEAR {
+        @Override
+        long keyOfDay(long epochDay) {
+            return LocalDate.ofEpochDay(epochDay).getYear();
+        }
+
+        @Override
+        LocalDate start(long key) {
+            return LocalDate.of((int) key, 1, 1);
+        }
+    };
+
+    /**
+     * Returns the number of the period containing a day. Periods are numbered in chronological order.
+     *
+     * @param epochDay the day, as returned by {@link LocalDate#toEpochDay()}
+     * @return the number of its period
+     */
+    abstract long keyOfDay(long epochDay);
+
+    /**
+     * Returns the first day of a period.
+     *
+     * @param key the number of the period
+     * @return its first day
+     */
+    abstract LocalDate start(long key);
+
+    /**
+     * Returns the first day of the period containing a date.
+     *
+     * @param date the date
+     * @return the first day of its period
+     */
+    public LocalDate startOf(LocalDate date) {
+        return start(keyOfDay(date.toEpochDay()));
+    }
+}
@@ -0,0 +1,182 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The totals of the transactions of a budget per period of a {@link RollupPeriod}: number of transactions,
+ * sum, income and expense of each period that has or had transactions. {@link Budget} keeps one table per
+ * kind of period and updates them on every change, so rollups never scan the transactions.
+ * <p>
+ * The sums and the counts are also kept in two {@link FenwickTree}s over the periods, so that the totals
+ * of any range of whole periods are found in O(log p), p being the number of periods. Periods are added in
+ * date order in the usual case, which appends to the trees; a period inserted before the last one shifts
+ * the periods after it and rebuilds the trees in O(p), which stays cheap since a budget spans a few
+ * thousand days at most. Periods whose transactions were all removed keep an empty entry until
+ * {@link #clear()}.
+ *
+ * @author Alessandro Catenacci
+ */
+final class RollupTable {
+    static final long SECONDS_PER_DAY = 86_400;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final RollupPeriod period;
+    /** The periods, by number, in ascending order. */
+    private long[] keys = new long[INITIAL_CAPACITY];
+    private long[] counts = new long[INITIAL_CAPACITY];
+    private long[] sums = new long[INITIAL_CAPACITY];
+    private long[] incomes = new long[INITIAL_CAPACITY];
+    private long[] expenses = new long[INITIAL_CAPACITY];
+    private int size;
+    private final FenwickTree sumTree = new FenwickTree();
+    private final FenwickTree countTree = new FenwickTree();
+
+    /**
+     * Creates an empty table.
+     *
+     * @param period the periods of the table
+     */
+    RollupTable(RollupPeriod period) {
+        this.period = period;
+    }
+
+    /**
+     * Returns the day of a date stored in the date column of a {@link ColumnStore}.
+     */
+    static long dayOf(long epochSecond) {
+        return Math.floorDiv(epochSecond, SECONDS_PER_DAY);
+    }
+
+    /**
+     * Adds a transaction.
+     *
+     * @param epochDay the day of the transaction, see {@link #dayOf(long)}
+     * @param amount   its amount, in minor units
+     */
+    void add(long epochDay, long amount) {
+        update(indexOf(period.keyOfDay(epochDay)), amount, 1);
+    }
+
+    /**
+     * Removes a transaction previously added with the same day and amount.
+     *
+     * @param epochDay the day of the transaction
+     * @param amount   its amount, in minor units
+     */
+    void remove(long epochDay, long amount) {
+        update(Arrays.binarySearch(keys, 0, size, period.keyOfDay(epochDay)), amount, -1);
+    }
+
+    /**
+     * Adds ({@code sign} 1) or removes ({@code sign} -1) an amount from the period at the given index.
+     */
+    private void update(int index, long amount, int sign) {
+        long delta = sign * amount;
+        counts[index] += sign;
+        sums[index] += delta;
+        if (amount > 0) {
+            incomes[index] += delta;
+        } else {
+            expenses[index] += delta;
+        }
+        sumTree.add(index, delta);
+        countTree.add(index, sign);
+    }
+
+    /**
+     * Returns the sum of the amounts of the periods numbered in {@code [fromKey, toKey)}.
+     */
+    long sum(long fromKey, long toKey) {
+        int from = lowerBound(fromKey);
+        int to = lowerBound(toKey);
+        return from < to ? sumTree.prefixSum(to) - sumTree.prefixSum(from) : 0;
+    }
+
+    /**
+     * Returns the number of transactions of the periods numbered in {@code [fromKey, toKey)}.
+     */
+    long count(long fromKey, long toKey) {
+        int from = lowerBound(fromKey);
+        int to = lowerBound(toKey);
+        return from < to ? countTree.prefixSum(to) - countTree.prefixSum(from) : 0;
+    }
+
+    /**
+     * Returns the totals of the periods numbered in {@code [fromKey, toKey)} that have transactions.
+     */
+    List<PeriodTotal> totals(long fromKey, long toKey) {
+        int to = lowerBound(toKey);
+        List<PeriodTotal> totals = new ArrayList<>();
+        for (int index = lowerBound(fromKey); index < to; index++) {
+            if (counts[index] > 0) {
+                totals.add(new PeriodTotal(period, period.start(keys[index]), (int) counts[index],
+                        new Money(sums[index]), new Money(incomes[index]), new Money(expenses[index])));
+            }
+        }
+        return totals;
+    }
+
+    /**
+     * Removes all periods.
+     */
+    void clear() {
+        size = 0;
+        sumTree.clear();
+        countTree.clear();
+    }
+
+    /**
+     * Returns the index of a period, adding an empty entry for it if needed.
+     */
+    private int indexOf(long key) {
+        if (size > 0 && keys[size - 1] == key) {
+            return size - 1;
+        }
+        int index = size == 0 || keys[size - 1] < key ? -size - 1 : Arrays.binarySearch(keys, 0, size, key);
+        if (index >= 0) {
+            return index;
+        }
+        index = -index - 1;
+        if (size == keys.length) {
+            int capacity = size * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            sums = Arrays.copyOf(sums, capacity);
+            incomes = Arrays.copyOf(incomes, capacity);
+            expenses = Arrays.copyOf(expenses, capacity);
+        }
+        for (long[] column : new long[][]{keys, counts, sums, incomes, expenses}) {
+            System.arraycopy(column, index, column, index + 1, size - index);
+            column[index] = 0;
+        }
+        keys[index] = key;
+        size++;
+        if (index == size - 1) {
+            sumTree.append(0);
+            countTree.append(0);
+        } else {
+            sumTree.load(sums, size);
+            countTree.load(counts, size);
+        }
+        return index;
+    }
+
+    /**
+     * Returns the index of the first period numbered not below the given key.
+     */
+    private int lowerBound(long key) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keys[middle] < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
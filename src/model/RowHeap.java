@@ -0,0 +1,108 @@
+package model;
+
+import java.util.function.IntToLongFunction;
+
+/**
+ * Keeps the {@code capacity} best rows of a {@link ColumnStore} offered to it, by a {@code long} key such as
+ * the amount, without sorting all of them. Rows with the same key are ranked by row number, lower first, so
+ * that ties are kept in the order of the budget.
+ * <p>
+ * The rows are kept in a binary heap whose root is the worst row kept, so each offer costs O(log capacity)
+ * and the whole selection O(k log capacity) for k offered rows.
+ *
+ * @author Alessandro Catenacci
+ */
+final class RowHeap {
+    private final IntToLongFunction key;
+    private final boolean largest;
+    private final int[] rows;
+    private int size;
+
+    /**
+     * Creates an empty heap.
+     *
+     * @param capacity the number of rows to keep
+     * @param key      the function returning the key of a row
+     * @param largest  true to keep the rows with the largest keys, false for the smallest ones
+     */
+    RowHeap(int capacity, IntToLongFunction key, boolean largest) {
+        this.key = key;
+        this.largest = largest;
+        this.rows = new int[capacity];
+    }
+
+    /**
+     * Offers a row, which is kept if it ranks among the best rows offered so far.
+     *
+     * @param row the row to offer
+     */
+    void offer(int row) {
+        if (size < rows.length) {
+            rows[size] = row;
+            siftUp(size++);
+        } else if (size > 0 && better(row, rows[0])) {
+            rows[0] = row;
+            siftDown(0, size);
+        }
+    }
+
+    /**
+     * Returns the rows kept, best first. The heap is emptied.
+     *
+     * @return the rows kept
+     */
+    int[] drain() {
+        int[] sorted = new int[size];
+        // Heap sort: move the worst row to the end until the heap is empty
+        for (int end = size - 1; end >= 0; end--) {
+            sorted[end] = rows[0];
+            rows[0] = rows[end];
+            siftDown(0, end);
+        }
+        size = 0;
+        return sorted;
+    }
+
+    /**
+     * Tells whether row {@code a} ranks before row {@code b}.
+     */
+    private boolean better(int a, int b) {
+        int cmp = Long.compare(key.applyAsLong(a), key.applyAsLong(b));
+        if (cmp == 0) {
+            return a < b;
+        }
+        return largest ? cmp > 0 : cmp < 0;
+    }
+
+    private void siftUp(int index) {
+        int row = rows[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!better(rows[parent], row)) {
+                break;
+            }
+            rows[index] = rows[parent];
+            index = parent;
+        }
+        rows[index] = row;
+    }
+
+    private void siftDown(int index, int end) {
+        int row = rows[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= end) {
+                break;
+            }
+            if (child + 1 < end && better(rows[child], rows[child + 1])) {
+                child++;
+            }
+            if (!better(row, rows[child])) {
+                break;
+            }
+            rows[index] = rows[child];
+            index = child;
+        }
+        rows[index] = row;
+    }
+}
@@ -0,0 +1,320 @@
+package model;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntToLongFunction;
+
+/**
+ * A secondary index that keeps the rows of a {@link ColumnStore} ordered by a {@code long} key,
+ * such as the transaction date. Rows with the same key are ordered by row number, so every row has
+ * exactly one position and can be found with a binary search.
+ * <p>
+ * Rows appended with a key not smaller than the last one (the usual case for dates) are added at the
+ * end in O(1); other insertions and removals shift the tail of the index with {@link System#arraycopy}.
+ *
+ * @author Alessandro Catenacci
+ */
+final class SortedRowIndex {
+    private static final int INITIAL_CAPACITY = 16;
+    /** Number of rows above which {@link #rebuild(int)} sorts the two halves of a range in parallel. */
+    private static final int PARALLEL_SORT_THRESHOLD = 1 << 16;
+
+    private final IntToLongFunction key;
+    private int[] rows;
+    private int size;
+
+    /**
+     * Creates an empty index.
+     *
+     * @param key the function returning the key of a row
+     */
+    SortedRowIndex(IntToLongFunction key) {
+        this.key = key;
+        this.rows = new int[INITIAL_CAPACITY];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the row at the given position of the index.
+     *
+     * @param position a position between 0 and {@link #size()} - 1
+     * @return the row stored at this position
+     */
+    int rowAt(int position) {
+        return rows[position];
+    }
+
+    /**
+     * Adds a row to the index, using its current key.
+     *
+     * @param row the row to add
+     */
+    void insert(int row) {
+        if (size == rows.length) {
+            rows = Arrays.copyOf(rows, size + (size >> 1) + 1);
+        }
+        long rowKey = key.applyAsLong(row);
+        int position = size;
+        if (size > 0 && compare(rows[size - 1], rowKey, row) > 0) {
+            position = -search(rowKey, row) - 1;
+            System.arraycopy(rows, position, rows, position + 1, size - position);
+        }
+        rows[position] = row;
+        size++;
+    }
+
+    /**
+     * Adds the consecutive rows {@code from} to {@code to - 1}, which must be newer than every indexed row.
+     * The new rows are sorted on their own and merged with the index in a single pass, so adding k rows
+     * costs O(n + k log k) instead of k shifts of the index.
+     *
+     * @param from the first row to add
+     * @param to   the row after the last one to add
+     */
+    void insertAll(int from, int to) {
+        int count = to - from;
+        if (count <= 0) {
+            return;
+        }
+        int[] added = new int[count];
+        long[] keys = keys(from, to);
+        boolean sorted = true;
+        for (int i = 0; i < count; i++) {
+            added[i] = from + i;
+            if (sorted && i > 0 && keys[i - 1] > keys[i]) {
+                sorted = false;
+            }
+        }
+        if (!sorted) {
+            mergeSort(keys, from, added.clone(), added, 0, count);
+        }
+        if (size + count > rows.length) {
+            rows = Arrays.copyOf(rows, Math.max(size + count, rows.length + (rows.length >> 1)));
+        }
+        // Merge from the end, so that the indexed rows are moved at most once
+        int i = size - 1;
+        int j = count - 1;
+        for (int k = size + count - 1; j >= 0; k--) {
+            if (i >= 0 && compare(rows[i], key.applyAsLong(added[j]), added[j]) > 0) {
+                rows[k] = rows[i--];
+            } else {
+                rows[k] = added[j--];
+            }
+        }
+        size += count;
+    }
+
+    /**
+     * Removes a row from the index. The key of the row must not have changed since it was inserted.
+     *
+     * @param row the row to remove
+     * @throws IllegalStateException if the row is not in the index
+     */
+    void remove(int row) {
+        int position = search(key.applyAsLong(row), row);
+        if (position < 0) {
+            throw new IllegalStateException("Row " + row + " is not indexed");
+        }
+        System.arraycopy(rows, position + 1, rows, position, size - position - 1);
+        size--;
+    }
+
+    /**
+     * Returns a copy of this index, reading the keys of the rows with another function.
+     *
+     * @param key the function returning the key of a row in the copy
+     * @return the copy
+     */
+    SortedRowIndex copy(IntToLongFunction key) {
+        SortedRowIndex copy = new SortedRowIndex(key);
+        copy.rows = Arrays.copyOf(rows, Math.max(INITIAL_CAPACITY, size));
+        copy.size = size;
+        return copy;
+    }
+
+    /**
+     * Renumbers the rows after {@link ColumnStore#appendLive(ColumnStore.Snapshot, int[])}, dropping the ones that
+     * were deleted. The relative order of the remaining rows is unchanged, so no sorting is needed.
+     *
+     * @param newRows the mapping filled by {@link ColumnStore#appendLive(ColumnStore.Snapshot, int[])}
+     */
+    void compact(int[] newRows) {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            int row = newRows[rows[i]];
+            if (row != -1) {
+                rows[kept++] = row;
+            }
+        }
+        size = kept;
+    }
+
+    /**
+     * Rebuilds the index over rows 0 to {@code count - 1}. Input that is already ordered, such as
+     * transactions entered chronologically, is detected in a single pass. Large unordered input is sorted
+     * with the halves of the ranges of more than {@value #PARALLEL_SORT_THRESHOLD} rows sorted in parallel, in
+     * the current {@link java.util.concurrent.ForkJoinPool} or the common one.
+     *
+     * @param count the number of rows in the store
+     */
+    void rebuild(int count) {
+        rows = new int[Math.max(INITIAL_CAPACITY, count)];
+        long[] keys = keys(0, count);
+        boolean sorted = true;
+        for (int row = 0; row < count; row++) {
+            rows[row] = row;
+            if (sorted && row > 0 && keys[row - 1] > keys[row]) {
+                sorted = false;
+            }
+        }
+        size = count;
+        if (!sorted) {
+            parallelMergeSort(keys, Arrays.copyOf(rows, count), rows, 0, count);
+        }
+    }
+
+    /**
+     * Removes all rows from the index.
+     */
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * Returns the first position whose key is greater than or equal to the given key.
+     *
+     * @param value the key to look for
+     * @return a position between 0 and {@link #size()}
+     */
+    int lowerBound(long value) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (key.applyAsLong(rows[mid]) < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the first position whose key is strictly greater than the given key.
+     *
+     * @param value the key to look for
+     * @return a position between 0 and {@link #size()}
+     */
+    int upperBound(long value) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (key.applyAsLong(rows[mid]) <= value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Binary search for the exact (key, row) pair.
+     *
+     * @return the position of the row, or {@code -(insertion point) - 1} if it is not indexed
+     */
+    private int search(long rowKey, int row) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(rows[mid], rowKey, row);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private int compare(int indexedRow, long rowKey, int row) {
+        int cmp = Long.compare(key.applyAsLong(indexedRow), rowKey);
+        return cmp != 0 ? cmp : Integer.compare(indexedRow, row);
+    }
+
+    /**
+     * Returns the keys of the consecutive rows {@code from} to {@code to - 1}, read once before sorting them,
+     * since the key function may have to locate the segment of each row.
+     */
+    private long[] keys(int from, int to) {
+        long[] keys = new long[to - from];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = key.applyAsLong(from + i);
+        }
+        return keys;
+    }
+
+    /**
+     * Stable top-down merge sort of {@code dst[from, to)} by key, using {@code src} as scratch space.
+     * Both arrays must hold the same rows on entry; the key of row {@code r} is {@code keys[r - firstRow]}.
+     */
+    private static void mergeSort(long[] keys, int firstRow, int[] src, int[] dst, int from, int to) {
+        if (to - from < 2) {
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(keys, firstRow, dst, src, from, mid);
+        mergeSort(keys, firstRow, dst, src, mid, to);
+        merge(keys, firstRow, src, dst, from, mid, to);
+    }
+
+    /**
+     * Sorts like {@link #mergeSort} the rows of a whole store, starting at row 0.
+     */
+    private static void parallelMergeSort(long[] keys, int[] src, int[] dst, int from, int to) {
+        if (to - from < PARALLEL_SORT_THRESHOLD) {
+            mergeSort(keys, 0, src, dst, from, to);
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        ForkJoinTask.invokeAll(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                parallelMergeSort(keys, dst, src, from, mid);
+            }
+        }, new RecursiveAction() {
+            @Override
+            protected void compute() {
+                parallelMergeSort(keys, dst, src, mid, to);
+            }
+        });
+        merge(keys, 0, src, dst, from, mid, to);
+    }
+
+    /**
+     * Merges the sorted ranges {@code [from, mid)} and {@code [mid, to)} of {@code src} into {@code dst}.
+     */
+    private static void merge(long[] keys, int firstRow, int[] src, int[] dst, int from, int mid, int to) {
+        if (keys[src[mid - 1] - firstRow] <= keys[src[mid] - firstRow]) {
+            System.arraycopy(src, from, dst, from, to - from);
+            return;
+        }
+        for (int i = from, left = from, right = mid; i < to; i++) {
+            if (right >= to
+                    || (left < mid && keys[src[left] - firstRow] <= keys[src[right] - firstRow])) {
+                dst[i] = src[left++];
+            } else {
+                dst[i] = src[right++];
+            }
+        }
+    }
+}
@@ -1,38 +1,76 @@
 package model;
 
-import java.io.Serializable;
+import java.io.*;
 import java.time.LocalDateTime;
-import java.util.Random;
 
 /**
  * The Transaction class represents a financial transaction, which is identified by a unique identifier,
  * has a transaction date, description, and amount.
+ * <p>
+ * The identifier is assigned by the {@link Budget} the transaction is added to; a transaction that was
+ * never added to a budget has id 0.
  *
  * @author Alessandro Catenacci
  */
 
 public class Transaction implements Serializable {
-    private final int id;
+    @Serial
+    private static final long serialVersionUID = -382138691257871314L;
+
+    /**
+     * Transactions saved before ids became 64-bit stored an {@code int id}, and before amounts became
+     * {@link Money} a {@code float amount}. Both are still written, truncated and rounded, so the serial form
+     * stays compatible; {@code longId} and {@code amountMinorUnits} hold the actual values.
+     */
+    @Serial
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("id", int.class),
+            new ObjectStreamField("longId", long.class),
+            new ObjectStreamField("transactionDate", LocalDateTime.class),
+            new ObjectStreamField("description", String.class),
+            new ObjectStreamField("amount", float.class),
+            new ObjectStreamField("amountMinorUnits", long.class)
+    };
+
+    /**
+     * Id of a transaction that does not belong to a budget yet.
+     */
+    public static final long UNASSIGNED_ID = 0;
+
+    private long id;
     private LocalDateTime transactionDate;
     private String description;
-    private float amount;
-    private static Random random = new Random();
+    /** Amount in minor units, see {@link Money}. */
+    private long amount;
 
     /**
      * Creates a new transaction with the given amount, date and time, and description.
+     * Its id is assigned when it is added to a {@link Budget}.
      *
      * @param amount          The amount of this transaction.
      * @param transactionDate The date and time of this transaction.
      * @param description     The description of this transaction.
      */
-    public Transaction(float amount, LocalDateTime transactionDate, String description) {
-        this.id = random.nextInt(999) + 1;
-        this.amount = amount;
+    public Transaction(Money amount, LocalDateTime transactionDate, String description) {
+        this(UNASSIGNED_ID, amount, transactionDate, description);
+    }
+
+    /**
+     * Creates a transaction with a known id. Used by {@link Budget} to materialize its rows.
+     *
+     * @param id              The id of this transaction.
+     * @param amount          The amount of this transaction.
+     * @param transactionDate The date and time of this transaction.
+     * @param description     The description of this transaction.
+     */
+    Transaction(long id, Money amount, LocalDateTime transactionDate, String description) {
+        this.id = id;
+        this.amount = amount.minorUnits();
         this.transactionDate = transactionDate;
         this.description = description;
     }
 
-    public int getId() {
+    public long getId() {
         return id;
     }
 
@@ -44,8 +82,8 @@ public class Transaction implements Serializable {
         return description;
     }
 
-    public float getAmount() {
-        return amount;
+    public Money getAmount() {
+        return new Money(amount);
     }
 
     public void setTransactionDate(LocalDateTime transactionDate) {
@@ -56,18 +94,19 @@ public class Transaction implements Serializable {
         this.description = description;
     }
 
-    public void setAmount(float amount) {
-        this.amount = amount;
+    public void setAmount(Money amount) {
+        this.amount = amount.minorUnits();
     }
 
     @Override
     public String toString() {
         return String.format("Transaction ID: T%03d, Date: %s, Amount: %s, Description: %s",
-                id, transactionDate, amount, description);
+                id, transactionDate, getAmount(), description);
     }
 
     /**
      * Indicates whether some other object is "equal to" this one.
+     * Two transactions are equal if they have the same id; a transaction without id is only equal to itself.
      *
      * @param o The reference object with which to compare.
      * @return true if this object is the same as the obj argument; false otherwise.
@@ -77,6 +116,38 @@ public class Transaction implements Serializable {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Transaction that = (Transaction) o;
-        return id == that.id;
+        return id != UNASSIGNED_ID && id == that.id;
+    }
+
+    /**
+     * Returns a hash code consistent with {@link #equals(Object)}.
+     *
+     * @return the hash code of the id, or the identity hash code for a transaction without id
+     */
+    @Override
+    public int hashCode() {
+        return id != UNASSIGNED_ID ? Long.hashCode(id) : System.identityHashCode(this);
+    }
+
+    @Serial
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("id", (int) id);
+        fields.put("longId", id);
+        fields.put("transactionDate", transactionDate);
+        fields.put("description", description);
+        fields.put("amount", getAmount().toBigDecimal().floatValue());
+        fields.put("amountMinorUnits", amount);
+        out.writeFields();
+    }
+
+    @Serial
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        id = fields.defaulted("longId") ? fields.get("id", 0) : fields.get("longId", 0L);
+        transactionDate = (LocalDateTime) fields.get("transactionDate", null);
+        description = (String) fields.get("description", null);
+        amount = fields.defaulted("amountMinorUnits")
+                ? Money.ofFloat(fields.get("amount", 0f)).minorUnits() : fields.get("amountMinorUnits", 0L);
     }
-}
\ No newline at end of file
+}
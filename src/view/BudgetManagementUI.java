@@ -1,21 +1,25 @@
 package view;
 
+import controller.BackgroundJob;
 import controller.BudgetController.BudgetSearchController;
-import model.AutoSaveThread;
+import model.AutoSaveScheduler;
 import model.Budget;
+import model.Transaction;
 import view.components.BudgetTable;
 import view.components.BudgetTableModel;
+import view.components.JobProgressPanel;
 import view.panels.BudgetPanel.BudgetButtonPanel;
 import view.panels.BudgetPanel.BudgetSearchPanel;
 import view.panels.BudgetPanel.BudgetStatusPanel;
 
 import javax.swing.*;
 import java.awt.*;
+import java.util.List;
 
 /**
  * This class represents the main user interface for the Budget Management application.
  * It contains the main components of the UI, such as the table, button panel, status panel,
- * and search panel. It also manages the AutoSaveThread and BudgetSearchController.
+ * and search panel. It also manages the AutoSaveScheduler and BudgetSearchController.
  *
  * @author Alessandro Catenacci
  */
@@ -26,8 +30,9 @@ public class BudgetManagementUI {
     private BudgetButtonPanel buttonPanel;
     private BudgetStatusPanel statusPanel;
     private BudgetSearchPanel searchPanel;
+    private JPanel jobsPanel;
     private BudgetSearchController budgetSearchController;
-    private AutoSaveThread autosaveThread;
+    private AutoSaveScheduler autoSaveScheduler;
     private static BudgetManagementUI instance;
 
     /**
@@ -55,25 +60,75 @@ public class BudgetManagementUI {
         // Add the searchPanel container to the right side of the topPanel
         topPanel.add(searchPanel, BorderLayout.EAST);
 
-        // Add the topPanel, table, and statusPanel to the frame
+        // Create a panel to hold the progress of the background jobs above the statusPanel
+        jobsPanel = new JPanel();
+        jobsPanel.setLayout(new BoxLayout(jobsPanel, BoxLayout.Y_AXIS));
+        JPanel bottomPanel = new JPanel(new BorderLayout());
+        bottomPanel.add(jobsPanel, BorderLayout.NORTH);
+        bottomPanel.add(statusPanel, BorderLayout.CENTER);
+
+        // Add the topPanel, table, and bottomPanel to the frame
         frame = new JFrame("Budget Management");
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         frame.setLayout(new BorderLayout());
         frame.add(topPanel, BorderLayout.NORTH);
         frame.add(table, BorderLayout.CENTER);
-        frame.add(statusPanel, BorderLayout.SOUTH);
+        frame.add(bottomPanel, BorderLayout.SOUTH);
     }
 
     /**
-     * Launches the UI.
+     * Launches the UI, which becomes the current one, or shows it again after {@link #hide()}.
      */
     public void launch() {
+        instance = this;
         frame.setExtendedState(JFrame.MAXIMIZED_BOTH);
         frame.setVisible(true);
     }
 
-    public void setAutoSaveThread(AutoSaveThread autosaveThread) {
-        this.autosaveThread = autosaveThread;
+    /**
+     * Hides the UI while another one is loading a file, without stopping its autosave, so that it can be shown
+     * again by {@link #launch()} if the load does not succeed.
+     */
+    public void hide() {
+        frame.setVisible(false);
+    }
+
+    /**
+     * Shows the transactions of a file while it is being loaded into the budget of this UI, with the buttons and
+     * the search disabled, so that the window can appear before the whole file is decoded.
+     *
+     * @param transactions the transactions of the file, such as {@link model.LazyBudgetFile#transactions()}
+     */
+    public void showLoading(List<Transaction> transactions) {
+        tableModel.setView(budget -> transactions);
+        buttonPanel.setEnabled(false);
+        searchPanel.setEnabled(false);
+    }
+
+    /**
+     * Shows the budget of this UI again once the file shown by {@link #showLoading(List)} has been loaded into it.
+     */
+    public void loadingFinished() {
+        tableModel.setView(null);
+        statusPanel.updateBudget();
+        buttonPanel.setEnabled(true);
+        searchPanel.setEnabled(true);
+    }
+
+    /**
+     * Shows the progress of a background job at the bottom of the window until it ends.
+     *
+     * @param job the job to show
+     */
+    public void showJob(BackgroundJob<?> job) {
+        if (!job.isDone()) {
+            jobsPanel.add(new JobProgressPanel(job));
+            jobsPanel.revalidate();
+        }
+    }
+
+    public void setAutoSaveScheduler(AutoSaveScheduler autoSaveScheduler) {
+        this.autoSaveScheduler = autoSaveScheduler;
     }
 
     public static BudgetManagementUI getInstance() {
@@ -81,11 +136,13 @@ public class BudgetManagementUI {
     }
 
     /**
-     * Disposes the UI.
+     * Disposes the UI and stops its autosave.
      */
     public void dispose(){
         frame.dispose();
-        autosaveThread.interrupt();
+        if (autoSaveScheduler != null) {
+            autoSaveScheduler.stop();
+        }
     }
 
     public BudgetTable getTable() {
@@ -1,23 +1,44 @@
 package view.components;
 
 import model.Budget;
+import model.BudgetEvent;
+import model.BudgetListener;
+import model.BudgetSnapshot;
 import model.Transaction;
 
+import javax.swing.*;
 import javax.swing.table.AbstractTableModel;
 import java.io.Serial;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
+import java.util.function.Function;
 
 /**
  * The class representing the table model for a budget.
+ * Rows are read from the current {@link BudgetSnapshot} of the budget, which is only rebuilt when the
+ * budget changes, so painting the table never copies the transactions. The last row read is kept, since
+ * the table asks for each of its columns in turn.
+ * <p>
+ * The model listens to the budget and translates each {@link BudgetEvent} into row-level table events, so
+ * that an edit only repaints the rows it touched and keeps the selection of the other rows. Changes made
+ * outside the event dispatch thread are coalesced into a single full refresh on that thread.
+ * <p>
+ * The model can also show a view of the budget, such as the result of {@link Budget#topN(int, model.Query)},
+ * instead of all its transactions; the view is computed again whenever the budget changes.
  *
  * @author Alessandro Catenacci
  */
-public class BudgetTableModel extends AbstractTableModel {
+public class BudgetTableModel extends AbstractTableModel implements BudgetListener {
     @Serial
     private static final long serialVersionUID = 1L;
     private static final List<String> COLUMN_NAMES = List.of("ID", "Date", "Description", "Amount");
     private Budget budget;
+    private transient List<Transaction> lastRows;
+    private transient int lastRowIndex = -1;
+    private transient Transaction lastTransaction;
+    private transient volatile boolean refreshPending;
+    private transient Function<Budget, List<Transaction>> view;
+    private transient List<Transaction> viewRows;
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
 
     /**
@@ -27,6 +48,7 @@ public class BudgetTableModel extends AbstractTableModel {
      */
     public BudgetTableModel(Budget budget) {
         this.budget = budget;
+        budget.addBudgetListener(this);
     }
 
     @Override
@@ -36,7 +58,7 @@ public class BudgetTableModel extends AbstractTableModel {
 
     @Override
     public int getRowCount() {
-        return budget.getTransactions().size();
+        return rows().size();
     }
 
     @Override
@@ -46,18 +68,18 @@ public class BudgetTableModel extends AbstractTableModel {
 
     @Override
     public Object getValueAt(int rowIndex, int columnIndex) {
-        List<Transaction> transactions = budget.getTransactions();
+        List<Transaction> transactions = rows();
         if (transactions.isEmpty()) {
             return null;
         }
-        Transaction transaction = transactions.get(rowIndex);
+        Transaction transaction = rowOf(transactions, rowIndex);
         if (columnIndex == 0) {
             return "T00" + transaction.getId();
         } else {
             return switch (columnIndex) {
                 case 1 -> transaction.getTransactionDate().format(DATE_FORMATTER);
                 case 2 -> transaction.getDescription();
-                case 3 -> transaction.getAmount();
+                case 3 -> transaction.getAmount().toBigDecimal();
                 default -> null;
             };
         }
@@ -65,8 +87,7 @@ public class BudgetTableModel extends AbstractTableModel {
 
     @Override
     public Class<?> getColumnClass(int columnIndex) {
-        List<Transaction> transactions = budget.getTransactions();
-        if (transactions.isEmpty()) {
+        if (rows().isEmpty()) {
             return Object.class;
         }
         return getValueAt(0, columnIndex).getClass();
@@ -78,11 +99,44 @@ public class BudgetTableModel extends AbstractTableModel {
     }
 
     public Transaction getTransaction(int rowIndex) {
-        return budget.getTransactions().get(rowIndex);
+        return rows().get(rowIndex);
     }
 
     public int getRowIndex(Transaction transaction) {
-        return budget.getTransactions().indexOf(transaction);
+        return rows().indexOf(transaction);
+    }
+
+    /**
+     * Shows the transactions returned by a view of the budget instead of all of them, e.g.
+     * {@code budget -> budget.bottomN(100, Query.expense())} for the 100 largest payments.
+     *
+     * @param view the view, or null to show every transaction again
+     */
+    public void setView(Function<Budget, List<Transaction>> view) {
+        this.view = view;
+        this.viewRows = view == null ? null : view.apply(budget);
+        this.lastRows = null;
+        fireTableDataChanged();
+    }
+
+    public Function<Budget, List<Transaction>> getView() {
+        return view;
+    }
+
+    /**
+     * Returns the rows shown: the view if there is one, the current snapshot otherwise.
+     */
+    private List<Transaction> rows() {
+        return viewRows != null ? viewRows : budget.snapshot();
+    }
+
+    private Transaction rowOf(List<Transaction> transactions, int rowIndex) {
+        if (transactions != lastRows || rowIndex != lastRowIndex) {
+            lastTransaction = transactions.get(rowIndex);
+            lastRows = transactions;
+            lastRowIndex = rowIndex;
+        }
+        return lastTransaction;
     }
 
     public Budget getBudget() {
@@ -90,7 +144,68 @@ public class BudgetTableModel extends AbstractTableModel {
     }
 
     public void setBudget(Budget budget) {
+        this.budget.removeBudgetListener(this);
         this.budget = budget;
+        this.lastRows = null;
+        budget.addBudgetListener(this);
+        if (view != null) {
+            viewRows = view.apply(budget);
+        }
+        fireTableDataChanged();
+    }
+
+    /**
+     * Forwards a change of the budget to the table as row insertions, deletions or updates.
+     *
+     * @param event the change
+     */
+    @Override
+    public void budgetChanged(BudgetEvent event) {
+        if (!SwingUtilities.isEventDispatchThread()) {
+            // The rows may change again before the event dispatch thread runs, only a full refresh is safe
+            if (!refreshPending) {
+                refreshPending = true;
+                SwingUtilities.invokeLater(() -> {
+                    refreshPending = false;
+                    refreshView();
+                    fireTableDataChanged();
+                });
+            }
+            return;
+        }
+        if (view != null) {
+            // Rows of a view do not follow the positions of the budget
+            refreshView();
+            fireTableDataChanged();
+            return;
+        }
+        int[][] ranges = event.getRanges();
+        switch (event.getType()) {
+            case INSERTED -> {
+                for (int[] range : ranges) {
+                    fireTableRowsInserted(range[0], range[1]);
+                }
+            }
+            case DELETED -> {
+                // Positions refer to the rows before the deletion: remove the last ranges first
+                for (int i = ranges.length - 1; i >= 0; i--) {
+                    fireTableRowsDeleted(ranges[i][0], ranges[i][1]);
+                }
+            }
+            case UPDATED -> {
+                for (int[] range : ranges) {
+                    fireTableRowsUpdated(range[0], range[1]);
+                }
+            }
+            case RELOADED -> fireTableDataChanged();
+        }
+    }
+
+    private void refreshView() {
+        if (view != null) {
+            viewRows = view.apply(budget);
+            lastRows = null;
+        }
     }
 
 }
@@ -0,0 +1,86 @@
+package view.components;
+
+import controller.BackgroundJob;
+
+import javax.swing.*;
+import java.awt.*;
+import java.text.NumberFormat;
+
+/**
+ * A panel showing the progress of a {@link BackgroundJob}: its title, a progress bar, the rows and bytes
+ * processed so far, and a button to cancel it.
+ * <p>
+ * The panel reads the progress of the job on a Swing timer rather than being notified by the job, so that
+ * the job never floods the event dispatch thread however often it reports. It removes itself from its parent
+ * once the job has ended.
+ *
+ * @author Alessandro Catenacci
+ */
+public class JobProgressPanel extends JPanel {
+    private static final int REFRESH_INTERVAL = 100; // milliseconds
+    private static final long MEGABYTE = 1 << 20;
+
+    private final BackgroundJob<?> job;
+    private final JProgressBar progressBar;
+    private final JLabel detailLabel;
+    private final JButton cancelButton;
+    private final Timer timer;
+    private final NumberFormat numberFormat = NumberFormat.getIntegerInstance();
+
+    /**
+     * Constructs a new JobProgressPanel following the specified job.
+     *
+     * @param job the job to show
+     */
+    public JobProgressPanel(BackgroundJob<?> job) {
+        this.job = job;
+        setLayout(new FlowLayout(FlowLayout.LEFT));
+
+        progressBar = new JProgressBar(0, 1000);
+        detailLabel = new JLabel();
+        cancelButton = new JButton("Cancel");
+        cancelButton.addActionListener(e -> {
+            job.cancel();
+            cancelButton.setEnabled(false);
+            cancelButton.setText("Cancelling...");
+        });
+
+        add(new JLabel(job.getTitle()));
+        add(progressBar);
+        add(detailLabel);
+        add(cancelButton);
+
+        timer = new Timer(REFRESH_INTERVAL, e -> refresh());
+        timer.start();
+        refresh();
+    }
+
+    /**
+     * Shows the progress of the job, or removes this panel if the job has ended.
+     */
+    private void refresh() {
+        if (job.isDone()) {
+            timer.stop();
+            Container parent = getParent();
+            if (parent != null) {
+                parent.remove(this);
+                parent.revalidate();
+                parent.repaint();
+            }
+            return;
+        }
+        long totalRows = job.getTotalRows();
+        long rows = job.getRows();
+        progressBar.setIndeterminate(totalRows <= 0);
+        if (totalRows > 0) {
+            progressBar.setValue((int) Math.min(1000, rows * 1000 / totalRows));
+        }
+        String text = numberFormat.format(rows) + (totalRows >= 0 ? " / " + numberFormat.format(totalRows) : "")
+                + " rows";
+        long bytes = job.getBytes();
+        if (bytes > 0) {
+            text += ", " + numberFormat.format(bytes / MEGABYTE) + " MB";
+        }
+        detailLabel.setText(text);
+    }
+}
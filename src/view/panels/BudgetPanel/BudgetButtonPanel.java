@@ -48,10 +48,10 @@ public class BudgetButtonPanel extends JToolBar {
         this.budgetStatusPanel = budgetStatusPanel;
         this.budget = budget;
 
-        addButton = createButton("Add", e -> showAddTransactionDialog(budget, tableModel, frame));
+        addButton = createButton("Add", e -> showAddTransactionDialog(budget, frame));
         deleteButton = createButton("Delete", e -> showRemoveTransactionDialog(budget, tableModel, frame));
-        editButton = createButton("Edit", e -> showEditTransactionDialog(budget, tableModel, frame));
-        filterButton = createButton("Filter", e -> showFilterTransactionDialog(budget, tableModel, frame));
+        editButton = createButton("Edit", e -> showEditTransactionDialog(budget, frame));
+        filterButton = createButton("Filter", e -> showFilterTransactionDialog(budget, frame));
 
         fileButton = createButton("File", e -> showFileTransactionDialog(fileButton, budget));
         exportButton = createButton("Export", e -> showExportTransactionDialog(exportButton, budget));
@@ -98,9 +98,9 @@ public class BudgetButtonPanel extends JToolBar {
         return button;
     }
 
-    private void showAddTransactionDialog(Budget budget, BudgetTableModel tableModel, JFrame frame) {
+    private void showAddTransactionDialog(Budget budget, JFrame frame) {
         TransactionAddPanel transactionAddPanel = new TransactionAddPanel();
-        TransactionAddController transactionAddController = new TransactionAddController(budget, tableModel,
+        TransactionAddController transactionAddController = new TransactionAddController(budget,
                 transactionAddPanel, budgetStatusPanel);
         JDialog addTransactionDialog = createAddTransactionDialog(frame, transactionAddPanel);
         addTransactionDialog.setVisible(true);
@@ -120,10 +120,10 @@ public class BudgetButtonPanel extends JToolBar {
         return dialog;
     }
 
-    private void showEditTransactionDialog(Budget budget, BudgetTableModel tableModel, JFrame frame) {
+    private void showEditTransactionDialog(Budget budget, JFrame frame) {
         TransactionModifyPanel modifyTransactionPanel = new TransactionModifyPanel();
         TransactionModifyController modifyTransactionController = new TransactionModifyController(budget, modifyTransactionPanel,
-                budgetStatusPanel, tableModel);
+                budgetStatusPanel);
         JDialog modifyTransactionDialog = createModifyTransactionDialog(frame, modifyTransactionPanel);
         modifyTransactionDialog.setVisible(true);
     }
@@ -164,9 +164,9 @@ public class BudgetButtonPanel extends JToolBar {
         return dialog;
     }
 
-    private void showFilterTransactionDialog(Budget budget, BudgetTableModel tableModel, JFrame frame){
+    private void showFilterTransactionDialog(Budget budget, JFrame frame){
         BudgetFilterPanel budgetFilterPanel = new BudgetFilterPanel();
-        BudgetFilterController budgetFilterController = new BudgetFilterController(budgetFilterPanel, tableModel,
+        BudgetFilterController budgetFilterController = new BudgetFilterController(budgetFilterPanel,
                 budgetStatusPanel, budget);
         JDialog budgetFilterDialog = createFilterTransactionDialog(frame, budgetFilterPanel);
         budgetFilterDialog.setVisible(true);
@@ -205,6 +205,22 @@ public class BudgetButtonPanel extends JToolBar {
         popupMenu.show(component, 0, component.getHeight());
     }
 
+    /**
+     * Enables or disables all the buttons along with the panel.
+     *
+     * @param enabled true to enable the buttons, false to disable them
+     */
+    @Override
+    public void setEnabled(boolean enabled) {
+        super.setEnabled(enabled);
+        addButton.setEnabled(enabled);
+        deleteButton.setEnabled(enabled);
+        editButton.setEnabled(enabled);
+        filterButton.setEnabled(enabled);
+        fileButton.setEnabled(enabled);
+        exportButton.setEnabled(enabled);
+    }
+
     /**
      * Sets a new budget for the panel.
      *
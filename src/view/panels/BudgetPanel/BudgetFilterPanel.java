@@ -18,6 +18,7 @@ public class BudgetFilterPanel extends JPanel {
     private final JTextField toDateField;
     private final JComboBox<String> presetComboBox;
     private final JButton closeButton;
+    private final JLabel periodTotalLabel;
 
     /**
      * Constructs a new {@code BudgetFilterPanel} with default UI components and layout.
@@ -34,6 +35,7 @@ public class BudgetFilterPanel extends JPanel {
         presetComboBox = new JComboBox<>();
         closeButton = new JButton("Close");
         closeButton.setForeground(Color.RED);
+        periodTotalLabel = new JLabel(" ");
 
         presetComboBox.addItem("Last Day");
         presetComboBox.addItem("Last Week");
@@ -57,6 +59,10 @@ public class BudgetFilterPanel extends JPanel {
         bottomPanel.add(toDateLabel);
         bottomPanel.add(toDateField);
         add(bottomPanel);
+
+        JPanel totalPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        totalPanel.add(periodTotalLabel);
+        add(totalPanel);
     }
 
     public JTextField getFromDateField(){
@@ -79,6 +85,13 @@ public class BudgetFilterPanel extends JPanel {
         return resetButton;
     }
 
+    /**
+     * Returns the label showing the number and the total of the transactions of the selected period.
+     */
+    public JLabel getPeriodTotalLabel() {
+        return periodTotalLabel;
+    }
+
     public JComboBox<String> getPresetComboBox() {
         return presetComboBox;
     }
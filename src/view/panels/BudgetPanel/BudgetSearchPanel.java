@@ -57,6 +57,18 @@ public class BudgetSearchPanel extends JPanel {
         add(downButton, gbc);
     }
 
+    /**
+     * Enables or disables the search field and its buttons along with the panel.
+     */
+    @Override
+    public void setEnabled(boolean enabled) {
+        super.setEnabled(enabled);
+        searchTextField.setEnabled(enabled);
+        upButton.setEnabled(enabled);
+        downButton.setEnabled(enabled);
+        searchButton.setEnabled(enabled);
+    }
+
     public JTextField getSearchTextField() {
         return searchTextField;
     }
@@ -1,6 +1,7 @@
 package view.panels.BudgetPanel;
 
 import model.Budget;
+import model.BudgetSummary;
 
 import javax.swing.*;
 import java.awt.*;
@@ -63,17 +64,19 @@ public class BudgetStatusPanel extends JPanel {
 
     /**
      * Updates the status of the Budget object displayed on this panel.
-     * If the Budget object is null, or has no transactions, the labels will display empty strings.
+     * If the Budget object is null, the labels will display empty strings.
+     * The figures come from {@link Budget#getSummary()}, so updating does not scan the transactions.
      */
     public void updateBudget() {
-        if (budget != null && budget.getTransactions() != null) {
-            transactionCountLabel.setText("Number of Transactions: " + budget.getTransactions().size());
+        if (budget != null) {
+            BudgetSummary summary = budget.getSummary();
+            transactionCountLabel.setText("Number of Transactions: " + summary.count());
 
             // Format the total amount with digit group separators
             DecimalFormat decimalFormat = (DecimalFormat) NumberFormat.getNumberInstance();
             decimalFormat.setGroupingUsed(true);
             decimalFormat.setGroupingSize(DIGIT_GROUPING_SIZE);
-            String formattedTotalAmount = decimalFormat.format(budget.getTotalAmount());
+            String formattedTotalAmount = decimalFormat.format(summary.total().toBigDecimal());
             totalAmountSpentLabel.setText("Total Amount Spent: " + formattedTotalAmount);
         } else {
             transactionCountLabel.setText("");
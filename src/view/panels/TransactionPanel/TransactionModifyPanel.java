@@ -11,7 +11,7 @@ import java.awt.*;
  */
 public class TransactionModifyPanel extends TransactionPanelBase {
     private JLabel selectTransactionLabel;
-    private JComboBox<Integer> transactionComboBox;
+    private JComboBox<Long> transactionComboBox;
     private JLabel amountLabel;
     private JTextField amountTextField;
     private JLabel dateLabel;
@@ -49,7 +49,7 @@ public class TransactionModifyPanel extends TransactionPanelBase {
         add(super.getCancelButton());
     }
 
-    public JComboBox<Integer> getTransactionComboBox() {
+    public JComboBox<Long> getTransactionComboBox() {
         return transactionComboBox;
     }
 